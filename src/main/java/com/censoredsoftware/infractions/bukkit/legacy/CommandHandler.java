@@ -20,19 +20,28 @@ import com.censoredsoftware.infractions.bukkit.Infraction;
 import com.censoredsoftware.infractions.bukkit.Infractions;
 import com.censoredsoftware.infractions.bukkit.dossier.CompleteDossier;
 import com.censoredsoftware.infractions.bukkit.evidence.Evidence;
+import com.censoredsoftware.infractions.bukkit.issuer.Issuer;
 import com.censoredsoftware.infractions.bukkit.issuer.IssuerType;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.InfractionId;
 import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyCompleteDossier;
 import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.NameCache;
+import com.censoredsoftware.infractions.bukkit.legacy.data.AltGraph;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
-import com.censoredsoftware.infractions.bukkit.legacy.data.thread.AsyncIPMatcherTask;
+import com.censoredsoftware.infractions.bukkit.legacy.data.NameIndex;
+import com.censoredsoftware.infractions.bukkit.legacy.data.StringDictionary;
+import com.censoredsoftware.infractions.bukkit.legacy.data.SubnetTree;
+import com.censoredsoftware.infractions.bukkit.legacy.data.file.FileDataManager;
 import com.censoredsoftware.infractions.bukkit.legacy.util.MiscUtil;
 import com.censoredsoftware.infractions.bukkit.legacy.util.SettingUtil;
 import com.censoredsoftware.infractions.bukkit.legacy.util.URLUtil;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.apache.commons.lang.StringUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -44,7 +53,9 @@ import org.bukkit.entity.Player;
 import java.net.InetAddress;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentMap;
@@ -56,9 +67,12 @@ public class CommandHandler implements TabExecutor {
 
     @Override
     public boolean onCommand(CommandSender sender, Command c, String label, String[] args) {
-        Player p = null;
-        if (sender instanceof Player) p = (Player) sender;
+        final Player p = sender instanceof Player ? (Player) sender : null;
         if (c.getName().equalsIgnoreCase("infractions")) {
+            if (args.length == 2 && args[0].equalsIgnoreCase("reshard") && (p == null || p.isOp())) {
+                reshard(p, args[1]);
+                return true;
+            }
             MiscUtil.sendMessage(p, "---------------");
             MiscUtil.sendMessage(p, "INFRACTIONS HELP");
             MiscUtil.sendMessage(p, "---------------");
@@ -67,8 +81,12 @@ public class CommandHandler implements TabExecutor {
                 MiscUtil.sendMessage(p, ChatColor.GRAY + "  /uncite <player> <key>" + ChatColor.WHITE + " - Find the key with " + ChatColor.YELLOW + "/history" + ChatColor.WHITE + ".");
             }
             MiscUtil.sendMessage(p, ChatColor.GRAY + "  /history [player]");
+            if (MiscUtil.hasPermissionOrOP(p, "infractions.mod"))
+                MiscUtil.sendMessage(p, ChatColor.GRAY + "  /alts <player>" + ChatColor.WHITE + " - Shows accounts on the same addresses.");
             MiscUtil.sendMessage(p, ChatColor.GRAY + "  /reasons " + ChatColor.WHITE + "- Shows all valid infraction reasons.");
             MiscUtil.sendMessage(p, ChatColor.GRAY + "  /virtues " + ChatColor.WHITE + "- Shows all valid virtue types.");
+            if (p == null || p.isOp())
+                MiscUtil.sendMessage(p, ChatColor.GRAY + "  /infractions reshard <count>" + ChatColor.WHITE + " - Splits the data files, without a restart.");
             return true;
         } else if (c.getName().equalsIgnoreCase("reasons")) {
             MiscUtil.sendMessage(p, "------------------");
@@ -86,39 +104,48 @@ public class CommandHandler implements TabExecutor {
                 MiscUtil.sendMessage(p, "You do not have enough permissions.");
                 return true;
             }
-            if (SettingUtil.getSettingBoolean("require_proof")) {
-                if ((args.length != 3)) {
-                    MiscUtil.sendMessage(p, "You must provide a valid URL as proof.");
-                    return false;
-                }
-                if (!URLUtil.isValidURL(args[2])) {
-                    MiscUtil.sendMessage(p, "You must provide a valid URL as proof.");
-                    return false;
-                }
+            if (SettingUtil.getSettingBoolean("require_proof") && args.length != 3) {
+                MiscUtil.sendMessage(p, "You must provide a valid URL as proof.");
+                return false;
             }
             if (args.length == 0 || args.length == 1) {
                 MiscUtil.sendMessage(p, "Not enough arguments.");
                 return false;
             }
 
-            if (Infractions.getCompleteDossier(args[0]) == null) {
+            final String player = MiscUtil.getInfractionsPlayer(args[0]);
+            if (player == null) {
                 MiscUtil.sendMessage(p, "This player hasn't joined yet.");
+                didYouMean(p, args[0]);
                 return true;
             }
             // Levels
-            Integer level = SettingUtil.getLevel(args[1]);
+            final Integer level = SettingUtil.getLevel(args[1]);
             if (level != null) {
-                if (args.length == 3) {
-                    if (!URLUtil.isValidURL(args[2])) {
-                        MiscUtil.sendMessage(p, "You must provide a valid URL as proof.");
-                        return false;
+                final String reason = args[1];
+                final String proof = args.length == 3 ? args[2] : null;
+                final Issuer issuer = MiscUtil.getIssuer(sender);
+                CommandPipeline.submit(sender, new CommandPipeline.Task<Infraction>() {
+                    @Override
+                    protected Infraction resolve() throws Exception {
+                        CompleteDossier dossier = findDossier(player);
+                        Evidence evidence;
+                        if (proof != null) {
+                            String type = URLUtil.getContentType(proof);
+                            if (type == null)
+                                throw new CommandPipeline.Failure("You must provide a valid URL as proof.");
+                            evidence = MiscUtil.createEvidence(issuer, URLUtil.convertURL(proof), type.startsWith("image/"));
+                        } else evidence = MiscUtil.createEvidence(issuer, "No proof.", false);
+                        return new Infraction(dossier.getId(), System.currentTimeMillis(), StringDictionary.intern(reason), level, issuer, evidence);
                     }
-                    MiscUtil.addInfraction(MiscUtil.getInfractionsPlayer(args[0]), sender, level, args[1], URLUtil.convertURL(args[2]));
-                } else {
-                    MiscUtil.addInfraction(MiscUtil.getInfractionsPlayer(args[0]), sender, level, args[1], "No proof.");
-                }
-                MiscUtil.sendMessage(p, ChatColor.GOLD + "Success! " + ChatColor.WHITE + "The level " + level + " infraction has been received.");
-                MiscUtil.kickNotify(MiscUtil.getInfractionsPlayer(args[0]), args[1]);
+
+                    @Override
+                    protected void apply(Infraction infraction) {
+                        Infractions.getDossier(infraction.getPlayerId()).cite(infraction);
+                        MiscUtil.sendMessage(p, ChatColor.GOLD + "Success! " + ChatColor.WHITE + "The level " + level + " infraction has been received.");
+                        MiscUtil.kickNotify(player, reason);
+                    }
+                });
                 return true;
             }
         } else if (c.getName().equalsIgnoreCase("uncite")) {
@@ -131,16 +158,37 @@ public class CommandHandler implements TabExecutor {
                 return true;
             }
 
-            if (MiscUtil.removeInfraction(MiscUtil.getInfractionsPlayer(args[0]), args[1])) {
-                MiscUtil.sendMessage(p, "Infraction removed!");
-                try {
-                    MiscUtil.checkScore(MiscUtil.getInfractionsPlayer(args[0]));
-                } catch (NullPointerException e) {
-                    // player is offline
-                }
+            final String player = MiscUtil.getInfractionsPlayer(args[0]);
+            final InfractionId id;
+            try {
+                id = InfractionId.parse(args[1]);
+            } catch (IllegalArgumentException ignored) {
+                MiscUtil.sendMessage(p, "No such infraction.");
+                return true;
+            }
+            if (player == null) {
+                MiscUtil.sendMessage(p, "No such infraction.");
                 return true;
             }
-            MiscUtil.sendMessage(p, "No such infraction.");
+
+            CommandPipeline.submit(sender, new CommandPipeline.Task<LegacyDossier>() {
+                @Override
+                protected LegacyDossier resolve() throws Exception {
+                    return (LegacyDossier) findDossier(player);
+                }
+
+                @Override
+                protected void apply(LegacyDossier dossier) {
+                    Infraction infraction = dossier.getInfraction(id);
+                    if (infraction == null) {
+                        MiscUtil.sendMessage(p, "No such infraction.");
+                        return;
+                    }
+                    dossier.acquit(infraction);
+                    MiscUtil.sendMessage(p, "Infraction removed!");
+                    MiscUtil.checkScore(Bukkit.getPlayerExact(player));
+                }
+            });
             return true;
         } else if (c.getName().equalsIgnoreCase("history")) {
             if (!(args.length == 1) && !(p == null)) {
@@ -162,78 +210,62 @@ public class CommandHandler implements TabExecutor {
                 return true;
             }
 
-            /**
-             * DISPLAY ALL CURRENT INFRACTIONS
-             */
-
-            String player = MiscUtil.getInfractionsPlayer(args[0]);
-            if (player != null) {
-                sender.sendMessage("   ");
-
-                CompleteDossier dossier = Infractions.getCompleteDossier(player);
-
-                Integer maxScore = MiscUtil.getMaxScore(Infractions.getCompleteDossier(player).getId());
-                String chatLevel = InfractionsPlugin.getLevelForChat(player);
-                MiscUtil.sendMessage(p, ChatColor.WHITE + (chatLevel.equals("") ? "" : chatLevel + " ") + ChatColor.YELLOW + player + ChatColor.WHITE + " - " + MiscUtil.getScore(player) + (maxScore == null ? " points towards a ban." : " points out of " + maxScore + " until a ban."));
-
-                try {
-                    boolean staff = MiscUtil.hasPermissionOrOP(p, "infractions.mod");
-                    Set<Infraction> infractions = dossier.getInfractions();
-                    if (!infractions.isEmpty()) {
-                        for (Infraction infraction : infractions) {
-                            MiscUtil.sendMessage(p, ChatColor.DARK_RED + "✘ " + ChatColor.DARK_PURPLE + StringUtils.capitalize(infraction.getReason()) + ChatColor.DARK_GRAY + " - " + ChatColor.BLUE + FORMAT.format(infraction.getDateCreated()));
-                            MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "     Penalty: " + ChatColor.GRAY + infraction.getScore());
-                            MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "     Proof: " + ChatColor.GRAY + Iterables.getFirst(Collections2.transform(infraction.getEvidence(), new Function<Evidence, Object>() {
-                                @Override
-                                public String apply(Evidence evidence) {
-                                    return evidence.getRawData();
-                                }
-                            }), "No Proof."));
-                            if (staff) {
-                                String id = MiscUtil.getInfractionId(infraction);
-                                MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "     Key: " + ChatColor.GRAY + id);
-                                String issuerId = infraction.getIssuer().getId();
-                                if (IssuerType.STAFF.equals(infraction.getIssuer().getType())) {
-                                    UUID issuerUUID = UUID.fromString(issuerId);
-                                    ConcurrentMap<UUID, LegacyDossier> map = DataManager.getManager().getMapFor(LegacyDossier.class);
-                                    if (map.containsKey(issuerUUID) && map.get(issuerUUID) instanceof CompleteDossier) {
-                                        CompleteDossier issuerDossier = (LegacyCompleteDossier) map.get(issuerUUID);
-                                        issuerId = issuerDossier.getLastKnownName();
-                                    } else {
-                                        issuerId = "INVALID UUID: " + issuerId;
-                                    }
-                                }
-                                MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "     Issuer: " + ChatColor.GRAY + issuerId);
-                            }
-                        }
-                    } else
-                        MiscUtil.sendMessage(p, ChatColor.DARK_GREEN + "✔ " + ChatColor.WHITE + "No infractions found for this player.");
-                    if (!staff) return true;
-                    Set<InetAddress> addresses = dossier.getAssociatedIPAddresses();
-                    MiscUtil.sendMessage(p, ChatColor.BLUE + "✔ " + ChatColor.DARK_AQUA + "Associated IP Addresses:");
-                    if (addresses.isEmpty())
-                        MiscUtil.sendMessage(p, ChatColor.GRAY + "     No currently known addresses.");
-                    else for (InetAddress address : addresses) {
-                        MiscUtil.sendMessage(p, ChatColor.GRAY + "     " + address.getHostAddress());
-                        Collection<String> others = AsyncIPMatcherTask.getRelatives(dossier.getId());
-                        if (others.size() > 1) {
-                            MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "       - also associated with:");
-                            for (String other : others) {
-                                if (other.equals(player)) continue;
-                                MiscUtil.sendMessage(p, ChatColor.GRAY + "         " + ChatColor.YELLOW + other);
-                            }
-                        }
-                    }
+            final String player = MiscUtil.getInfractionsPlayer(args[0]);
+            if (player == null) {
+                MiscUtil.sendMessage(p, "A player with the name \"" + args[0] + "\" cannot be found.");
+                didYouMean(p, args[0]);
+                return true;
+            }
 
-                    sender.sendMessage("   ");
-                    return true;
-                } catch (NullPointerException e) {
-                    return true;
+            final boolean staff = MiscUtil.hasPermissionOrOP(p, "infractions.mod");
+            CommandPipeline.submit(sender, new CommandPipeline.Task<Alts>() {
+                @Override
+                protected Alts resolve() throws Exception {
+                    CompleteDossier dossier = findDossier(player);
+                    return new Alts(dossier, staff ? AltGraph.getRelatives(dossier.getId()) : Collections.<String>emptyList(), null);
+                }
+
+                @Override
+                protected void apply(Alts alts) {
+                    showHistory(p, player, alts.dossier, alts.relatives);
                 }
-            } else {
+            });
+            return true;
+        } else if (c.getName().equalsIgnoreCase("alts")) {
+            if (!(args.length == 1)) {
+                MiscUtil.sendMessage(p, "Not enough arguments.");
+                return false;
+            }
+            if (!MiscUtil.hasPermissionOrOP(p, "infractions.mod")) {
+                MiscUtil.sendMessage(p, "You do not have enough permissions.");
+                return true;
+            }
+
+            final String player = MiscUtil.getInfractionsPlayer(args[0]);
+            if (player == null) {
                 MiscUtil.sendMessage(p, "A player with the name \"" + args[0] + "\" cannot be found.");
+                didYouMean(p, args[0]);
                 return true;
             }
+
+            CommandPipeline.submit(sender, new CommandPipeline.Task<Alts>() {
+                @Override
+                protected Alts resolve() throws Exception {
+                    CompleteDossier dossier = findDossier(player);
+                    Map<String, List<String>> nearby = Maps.newLinkedHashMap();
+                    for (InetAddress address : dossier.getAssociatedIPAddresses()) {
+                        List<String> names = SubnetTree.getNearby(dossier.getId(), address);
+                        if (!names.isEmpty()) nearby.put(SubnetTree.describe(address), names);
+                    }
+                    return new Alts(dossier, AltGraph.getRelatives(dossier.getId()), nearby);
+                }
+
+                @Override
+                protected void apply(Alts alts) {
+                    showAlts(p, player, alts);
+                }
+            });
+            return true;
         } else if (c.getName().equalsIgnoreCase("clearhistory") && p != null && p.hasPermission("infractions.clearhistory") && args.length > 0) {
             try {
                 Player remove = Bukkit.getServer().matchPlayer(args[0]).get(0);
@@ -249,21 +281,160 @@ public class CommandHandler implements TabExecutor {
         return false;
     }
 
+    /**
+     * Change the number of files per data type. The files are rewritten by the next save, and the count is kept in
+     * the config for the next start.
+     */
+    private static void reshard(Player p, String argument) {
+        if (!(DataManager.getManager() instanceof FileDataManager)) {
+            MiscUtil.sendMessage(p, "Only the file and binary save methods are split into shards.");
+            return;
+        }
+        int count;
+        try {
+            count = Integer.parseInt(argument);
+        } catch (NumberFormatException ignored) {
+            count = 0;
+        }
+        if (count < 1) {
+            MiscUtil.sendMessage(p, "The shard count has to be a number above 0.");
+            return;
+        }
+        ((FileDataManager) DataManager.getManager()).reshard(count);
+        InfractionsPlugin.getInst().getConfig().set("saving.shards", count);
+        InfractionsPlugin.getInst().saveConfig();
+        DataManager.requestSave();
+        MiscUtil.sendMessage(p, "The data files will be split into " + count + " shard(s) by the next save.");
+    }
+
+    /**
+     * Look up the dossier of a known player, off the main thread.
+     */
+    private static CompleteDossier findDossier(String player) throws CommandPipeline.Failure {
+        try {
+            return Infractions.getCompleteDossier(player);
+        } catch (NullPointerException ignored) {
+            throw new CommandPipeline.Failure("A player with the name \"" + player + "\" cannot be found.");
+        }
+    }
+
+    /**
+     * A dossier and its related accounts, looked up off the main thread since the graph and the subnet tree may
+     * decode dossiers.
+     */
+    private static final class Alts {
+        final CompleteDossier dossier;
+        final List<String> relatives;
+
+        // Subnet description -> the other names inside it, null when not looked up.
+        final Map<String, List<String>> nearby;
+
+        Alts(CompleteDossier dossier, List<String> relatives, Map<String, List<String>> nearby) {
+            this.dossier = dossier;
+            this.relatives = relatives;
+            this.nearby = nearby;
+        }
+    }
+
+    /**
+     * DISPLAY ALL CURRENT INFRACTIONS
+     */
+    private static void showHistory(Player p, String player, CompleteDossier dossier, Collection<String> others) {
+        MiscUtil.sendMessage(p, "   ");
+
+        Integer maxScore = MiscUtil.getMaxScore(dossier.getId());
+        String chatLevel = InfractionsPlugin.getLevelForChat(dossier.getId());
+        MiscUtil.sendMessage(p, ChatColor.WHITE + (chatLevel.equals("") ? "" : chatLevel + " ") + ChatColor.YELLOW + player + ChatColor.WHITE + " - " + dossier.getScore() + (maxScore == null ? " points towards a ban." : " points out of " + maxScore + " until a ban."));
+
+        try {
+            boolean staff = MiscUtil.hasPermissionOrOP(p, "infractions.mod");
+            Set<Infraction> infractions = dossier.getInfractions();
+            if (!infractions.isEmpty()) {
+                for (Infraction infraction : infractions) {
+                    MiscUtil.sendMessage(p, ChatColor.DARK_RED + "✘ " + ChatColor.DARK_PURPLE + StringUtils.capitalize(infraction.getReason()) + ChatColor.DARK_GRAY + " - " + ChatColor.BLUE + FORMAT.format(infraction.getDateCreated()));
+                    MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "     Penalty: " + ChatColor.GRAY + infraction.getScore());
+                    MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "     Proof: " + ChatColor.GRAY + Iterables.getFirst(Collections2.transform(infraction.getEvidence(), new Function<Evidence, Object>() {
+                        @Override
+                        public String apply(Evidence evidence) {
+                            return evidence.getRawData();
+                        }
+                    }), "No Proof."));
+                    if (staff) {
+                        String id = MiscUtil.getInfractionId(infraction);
+                        MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "     Key: " + ChatColor.GRAY + id);
+                        String issuerId = infraction.getIssuer().getId();
+                        if (IssuerType.STAFF.equals(infraction.getIssuer().getType())) {
+                            UUID issuerUUID = UUID.fromString(issuerId);
+                            ConcurrentMap<UUID, LegacyDossier> map = DataManager.getManager().getMapFor(LegacyDossier.class);
+                            if (map.containsKey(issuerUUID) && map.get(issuerUUID) instanceof CompleteDossier) {
+                                CompleteDossier issuerDossier = (LegacyCompleteDossier) map.get(issuerUUID);
+                                issuerId = issuerDossier.getLastKnownName();
+                            } else {
+                                issuerId = "INVALID UUID: " + issuerId;
+                            }
+                        }
+                        MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "     Issuer: " + ChatColor.GRAY + issuerId);
+                    }
+                }
+            } else
+                MiscUtil.sendMessage(p, ChatColor.DARK_GREEN + "✔ " + ChatColor.WHITE + "No infractions found for this player.");
+            if (!staff) return;
+            Set<InetAddress> addresses = dossier.getAssociatedIPAddresses();
+            MiscUtil.sendMessage(p, ChatColor.BLUE + "✔ " + ChatColor.DARK_AQUA + "Associated IP Addresses:");
+            if (addresses.isEmpty())
+                MiscUtil.sendMessage(p, ChatColor.GRAY + "     No currently known addresses.");
+            else for (InetAddress address : addresses)
+                MiscUtil.sendMessage(p, ChatColor.GRAY + "     " + address.getHostAddress());
+            if (!others.isEmpty()) {
+                MiscUtil.sendMessage(p, ChatColor.DARK_GRAY + "       - also associated with:");
+                for (String other : others)
+                    MiscUtil.sendMessage(p, ChatColor.GRAY + "         " + ChatColor.YELLOW + other);
+            }
+
+            MiscUtil.sendMessage(p, "   ");
+        } catch (NullPointerException ignored) {
+        }
+    }
+
+    private static void showAlts(Player p, String player, Alts alts) {
+        MiscUtil.sendMessage(p, "   ");
+        MiscUtil.sendMessage(p, ChatColor.YELLOW + player + ChatColor.WHITE + " - possible alternate accounts.");
+        boolean found = false;
+        for (Map.Entry<String, List<String>> subnet : alts.nearby.entrySet()) {
+            found = true;
+            MiscUtil.sendMessage(p, ChatColor.BLUE + "✔ " + ChatColor.DARK_AQUA + "Inside " + subnet.getKey() + ":");
+            for (String other : subnet.getValue())
+                MiscUtil.sendMessage(p, ChatColor.GRAY + "     " + ChatColor.YELLOW + other);
+        }
+        if (!alts.relatives.isEmpty()) {
+            found = true;
+            MiscUtil.sendMessage(p, ChatColor.BLUE + "✔ " + ChatColor.DARK_AQUA + "Linked through shared addresses:");
+            for (String other : alts.relatives)
+                MiscUtil.sendMessage(p, ChatColor.GRAY + "     " + ChatColor.YELLOW + other);
+        }
+        if (!found)
+            MiscUtil.sendMessage(p, ChatColor.DARK_GREEN + "✔ " + ChatColor.WHITE + "No other accounts found for this player.");
+        MiscUtil.sendMessage(p, "   ");
+    }
+
+    /**
+     * Suggest the known names closest to a mistyped one.
+     */
+    private static void didYouMean(Player p, String guess) {
+        List<String> names = NameIndex.suggest(guess, 3);
+        if (!names.isEmpty()) MiscUtil.sendMessage(p, "Did you mean: " + Joiner.on(", ").join(names) + "?");
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public List<String> onTabComplete(CommandSender commandSender, Command command, String s, final String[] args) {
 
         List<String> list = Lists.newArrayList();
         if (!commandSender.hasPermission("infractions.mod")) return list;
-        if (args.length == 1 && ("cite".equals(command.getName()) || "uncite".equals(command.getName()) || "history".equals(command.getName()) || "clearhistory".equals(command.getName()))) {
+        if (args.length == 1 && ("cite".equals(command.getName()) || "uncite".equals(command.getName()) || "history".equals(command.getName()) || "alts".equals(command.getName()) || "clearhistory".equals(command.getName()))) {
             for (Player player : Bukkit.getOnlinePlayers())
                 if (player.getName().toLowerCase().startsWith(args[0].toLowerCase())) list.add(player.getName());
         } else if (args.length == 2) {
-            boolean step1Done = false;
-            try {
-                step1Done = Infractions.getCompleteDossier(args[0]) != null;
-            } catch (Exception ignored) {
-            }
             Predicate<String> predicate = new Predicate<String>() {
                 @Override
                 public boolean apply(String s) {
@@ -272,9 +443,29 @@ public class CommandHandler implements TabExecutor {
             };
             if ("cite".equals(command.getName()))
                 list.addAll(Collections2.filter(SettingUtil.getAllLevels(), predicate));
-            else if ("uncite".equals(command.getName()) && step1Done)
-                list.addAll(Collections2.filter(((LegacyDossier) Infractions.getCompleteDossier(args[0])).getInfractionIds(), predicate));
+            else if ("uncite".equals(command.getName())) {
+                LegacyDossier dossier = findKnownDossier(args[0]);
+                if (dossier != null) list.addAll(Collections2.filter(dossier.getInfractionIds(), predicate));
+            }
         }
         return list;
     }
+
+    /**
+     * Find a dossier from what is already in memory, without asking Mojang.
+     *
+     * @param name The player name.
+     * @return The dossier, or null if the name isn't known locally.
+     */
+    private static LegacyDossier findKnownDossier(String name) {
+        UUID id = NameCache.getId(name);
+        if (id != null) {
+            LegacyDossier dossier = DataManager.getManager().getFor(LegacyDossier.class, id);
+            if (dossier != null) return dossier;
+        }
+        for (LegacyDossier dossier : DataManager.getManager().findDossiersByName(name))
+            if (dossier instanceof LegacyCompleteDossier && name.equalsIgnoreCase(((LegacyCompleteDossier) dossier).getLastKnownName()))
+                return dossier;
+        return null;
+    }
 }
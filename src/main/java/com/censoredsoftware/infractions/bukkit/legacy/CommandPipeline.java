@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy;
+
+import com.censoredsoftware.infractions.bukkit.legacy.util.MiscUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Runs the slow part of a command off the main thread.
+ * <p/>
+ * A command is parsed on the main thread, its lookups (Mojang, proof URLs, bit.ly) run on a small bounded pool,
+ * then the result is applied and answered back on the main thread. A lookup that takes too long is interrupted and
+ * answered with a timeout, so a slow network never holds up a tick.
+ */
+public class CommandPipeline {
+    private static final int THREADS = 2;
+    private static final int QUEUE = 16;
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Infractions Command " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Private constructor.
+     */
+    private CommandPipeline() {
+    }
+
+    /**
+     * The stages of a command after parsing.
+     *
+     * @param <T> What the lookups find.
+     */
+    public static abstract class Task<T> {
+        /**
+         * Off the main thread, do the lookups. May block on the network, but must not touch the world.
+         *
+         * @return What was found.
+         * @throws Failure   To stop with a message for the sender.
+         * @throws Exception If something went wrong.
+         */
+        protected abstract T resolve() throws Exception;
+
+        /**
+         * On the main thread, apply what was found and answer the sender.
+         *
+         * @param result What was found.
+         */
+        protected abstract void apply(T result);
+
+        /**
+         * On the main thread, answer a command that failed or timed out.
+         *
+         * @param p       The sender, null for the console.
+         * @param message What to tell them.
+         */
+        protected void fail(Player p, String message) {
+            MiscUtil.sendMessage(p, message);
+        }
+    }
+
+    /**
+     * Stops a command with a message for the sender.
+     */
+    public static class Failure extends Exception {
+        public Failure(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Run the lookups of a parsed command, then apply it.
+     *
+     * @param sender The sender of the command.
+     * @param task   The command.
+     */
+    public static <T> void submit(CommandSender sender, final Task<T> task) {
+        final Player p = sender instanceof Player ? (Player) sender : null;
+        final AtomicBoolean answered = new AtomicBoolean(false);
+        final Future<?> future;
+        try {
+            future = EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final T result = task.resolve();
+                        answer(answered, new Runnable() {
+                            @Override
+                            public void run() {
+                                task.apply(result);
+                            }
+                        });
+                    } catch (final Failure failure) {
+                        answer(answered, new Runnable() {
+                            @Override
+                            public void run() {
+                                task.fail(p, failure.getMessage());
+                            }
+                        });
+                    } catch (Exception oops) {
+                        if (Thread.currentThread().isInterrupted()) return;
+                        InfractionsPlugin.getInst().getLogger().log(Level.WARNING, "A command failed.", oops);
+                        answer(answered, new Runnable() {
+                            @Override
+                            public void run() {
+                                task.fail(p, "Something went wrong, please try again.");
+                            }
+                        });
+                    }
+                }
+            });
+        } catch (RejectedExecutionException busy) {
+            task.fail(p, "The server is busy, please try again.");
+            return;
+        }
+
+        long timeout = InfractionsPlugin.getInst().getConfig().getInt("command_timeout_seconds", 10) * 20L;
+        Bukkit.getScheduler().scheduleSyncDelayedTask(InfractionsPlugin.getInst(), new Runnable() {
+            @Override
+            public void run() {
+                if (!answered.compareAndSet(false, true)) return;
+                future.cancel(true);
+                task.fail(p, "That took too long, please try again.");
+            }
+        }, timeout);
+    }
+
+    /**
+     * Answer on the main thread, unless the command timed out first.
+     */
+    private static void answer(final AtomicBoolean answered, final Runnable reply) {
+        if (!InfractionsPlugin.getInst().isEnabled()) return;
+        Bukkit.getScheduler().scheduleSyncDelayedTask(InfractionsPlugin.getInst(), new Runnable() {
+            @Override
+            public void run() {
+                if (answered.compareAndSet(false, true)) reply.run();
+            }
+        });
+    }
+
+    /**
+     * Drop the commands still waiting, called on disable.
+     */
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+}
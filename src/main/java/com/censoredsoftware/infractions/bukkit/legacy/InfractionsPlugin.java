@@ -19,8 +19,13 @@ package com.censoredsoftware.infractions.bukkit.legacy;
 import com.censoredsoftware.infractions.bukkit.Infractions;
 import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyData;
 import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDatabase;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyIssuer;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.NameCache;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
-import com.censoredsoftware.infractions.bukkit.legacy.data.thread.AsyncIPMatcherTask;
+import com.censoredsoftware.infractions.bukkit.legacy.data.NameIndex;
+import com.censoredsoftware.infractions.bukkit.legacy.data.ServerData;
+import com.censoredsoftware.infractions.bukkit.legacy.data.StringDictionary;
+import com.censoredsoftware.infractions.bukkit.legacy.data.thread.ScoreVerifyTask;
 import com.censoredsoftware.infractions.bukkit.legacy.util.MiscUtil;
 import com.censoredsoftware.infractions.bukkit.legacy.util.SettingUtil;
 import com.censoredsoftware.infractions.bukkit.origin.Origin;
@@ -38,7 +43,6 @@ import org.mcstats.MetricsLite;
 
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 public class InfractionsPlugin extends JavaPlugin {
     static InfractionsPlugin inst;
@@ -58,10 +62,19 @@ public class InfractionsPlugin extends JavaPlugin {
         getServer().getScheduler().scheduleAsyncRepeatingTask(this, new Runnable() {
             @Override
             public void run() {
-                DataManager.saveAllData();
+                DataManager.requestSave();
+                NameCache.save();
             }
         }, startdelay, savefrequency);
-        getServer().getScheduler().scheduleAsyncRepeatingTask(this, new AsyncIPMatcherTask(), 50, TimeUnit.MINUTES.toMillis(getConfig().getInt("cache_interval_seconds", 10)));
+        getServer().getScheduler().scheduleAsyncRepeatingTask(this, new Runnable() {
+            @Override
+            public void run() {
+                ServerData.clearExpired();
+            }
+        }, startdelay, 20);
+        int verifyfrequency = SettingUtil.getSettingInt("verify_scores_minutes") * 60 * 20;
+        if (verifyfrequency > 0)
+            getServer().getScheduler().scheduleAsyncRepeatingTask(this, new ScoreVerifyTask(), startdelay, verifyfrequency);
     }
 
     public void loadListeners() {
@@ -76,6 +89,8 @@ public class InfractionsPlugin extends JavaPlugin {
         getCommand("reasons").setExecutor(ce);
         getCommand("history").setExecutor(ce);
         getCommand("history").setTabCompleter(ce);
+        getCommand("alts").setExecutor(ce);
+        getCommand("alts").setTabCompleter(ce);
         // actions
         getCommand("cite").setExecutor(ce);
         getCommand("cite").setTabCompleter(ce);
@@ -93,9 +108,13 @@ public class InfractionsPlugin extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        // Stop the save timer first, then wait for the final save.
+        Bukkit.getScheduler().cancelTasks(this);
+        CommandPipeline.shutdown();
         DataManager.saveAllData();
+        NameCache.save();
+        DataManager.closeAllData();
         HandlerList.unregisterAll(this);
-        Bukkit.getScheduler().cancelTasks(this);
         message("disabled");
     }
 
@@ -107,14 +126,19 @@ public class InfractionsPlugin extends JavaPlugin {
         getConfig().options().copyDefaults(true);
         saveConfig();
 
+        // Reasons are shared by most infractions, so they are interned up front
+        StringDictionary.seed(SettingUtil.getAllLevels());
+
         // Setup database
         Infractions.setDatabase(new LegacyDatabase());
-        Infractions.setDefaultOrigin(new Origin(Bukkit.getServerName(), Bukkit.getServerName(), OriginType.SERVER));
+        Infractions.setDefaultOrigin(LegacyIssuer.intern(new Origin(Bukkit.getServerName(), Bukkit.getServerName(), OriginType.SERVER)));
 
         getLogger().info("Initializing.");
 
         // Handle data
+        NameCache.load();
         DataManager.initAllData();
+        NameIndex.buildAsync();
         LegacyData.asyncConvert();
         LegacyData.asyncConvertIds();
 
@@ -153,7 +177,8 @@ public class InfractionsPlugin extends JavaPlugin {
         Integer maxScore = MiscUtil.getMaxScore(mojangId);
         if (maxScore == null) return "";
         double scoreRange = maxScore / 5.0;
-        int chatScore = (int) ((MiscUtil.getScore(mojangId) != 0 ? MiscUtil.getScore(mojangId) : 1) / scoreRange);
+        int score = MiscUtil.getScore(mojangId);
+        int chatScore = (int) ((score != 0 ? score : 1) / scoreRange);
         if (chatScore < 1) chatScore = 1;
         if (chatScore > 5) chatScore = 5;
         return CHAT_SCORES.get(chatScore);
@@ -19,6 +19,7 @@ package com.censoredsoftware.infractions.bukkit.legacy;
 import com.censoredsoftware.infractions.bukkit.Infractions;
 import com.censoredsoftware.infractions.bukkit.dossier.CompleteDossier;
 import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyCompleteDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.NameCache;
 import com.censoredsoftware.infractions.bukkit.legacy.data.ServerData;
 import com.censoredsoftware.infractions.bukkit.legacy.util.MiscUtil;
 import com.censoredsoftware.infractions.bukkit.legacy.util.SettingUtil;
@@ -41,6 +42,9 @@ public class PlayerListener implements Listener {
             return;
         }
 
+        // The server checked this pairing, so lookups by name don't have to ask Mojang
+        NameCache.put(p.getName(), p.getUniqueId());
+
         // Create data that we track
         CompleteDossier dossier = Infractions.getCompleteDossier(p);
         ((LegacyCompleteDossier) dossier).update(p);
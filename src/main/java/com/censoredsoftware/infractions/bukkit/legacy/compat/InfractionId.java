@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy.compat;
+
+import com.censoredsoftware.infractions.bukkit.Infraction;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
+import com.google.common.collect.MapMaker;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The id of an infraction, its creation time in milliseconds shifted left by 12 bits, plus a sequence number for
+ * infractions created in the same millisecond.
+ * <p/>
+ * Rendered the way ids always were, each digit of the creation time as a letter. Ids with a sequence number get an
+ * "x" and the sequence number in letters appended, so the ids of existing infractions don't change.
+ */
+public final class InfractionId implements Comparable<InfractionId> {
+    static final int SEQUENCE_BITS = 12;
+    private static final String LETTERS = "bFZcAQupWj";
+    private static final char SEQUENCE = 'x';
+
+    // The id each infraction in memory was stored under, by identity.
+    private static final ConcurrentMap<Infraction, InfractionId> ASSIGNED = new MapMaker().weakKeys().makeMap();
+
+    private final long value;
+
+    private InfractionId(long value) {
+        this.value = value;
+    }
+
+    public static InfractionId valueOf(long value) {
+        return new InfractionId(value);
+    }
+
+    /**
+     * Parse the letter form of an id.
+     *
+     * @param string The letter form.
+     * @return The id.
+     * @throws IllegalArgumentException If the string isn't an id.
+     */
+    public static InfractionId parse(String string) throws IllegalArgumentException {
+        int split = string.indexOf(SEQUENCE);
+        long time = fromLetters(string, 0, split < 0 ? string.length() : split);
+        long sequence = split < 0 ? 0 : fromLetters(string, split + 1, string.length());
+        if (sequence >= 1 << SEQUENCE_BITS) throw new IllegalArgumentException("Infraction id sequence out of range: " + string);
+        return new InfractionId(time << SEQUENCE_BITS | sequence);
+    }
+
+    /**
+     * Find the id of an infraction. Infractions that were never stored get the first free id for their creation time.
+     *
+     * @param infraction The infraction.
+     * @return The id.
+     */
+    public static InfractionId of(Infraction infraction) {
+        InfractionId id = ASSIGNED.get(infraction);
+        if (id != null) return id;
+        synchronized (ASSIGNED) {
+            id = ASSIGNED.get(infraction);
+            if (id != null) return id;
+            ConcurrentMap<InfractionId, LegacyInfraction> stored = DataManager.getManager().getMapFor(LegacyInfraction.class);
+            long base = infraction.getTimeCreated() << SEQUENCE_BITS;
+            for (int sequence = 0; sequence < 1 << SEQUENCE_BITS; sequence++) {
+                InfractionId candidate = new InfractionId(base | sequence);
+                LegacyInfraction existing = stored.get(candidate);
+                if (existing == null || existing.toInfraction() == infraction) {
+                    ASSIGNED.put(infraction, candidate);
+                    return candidate;
+                }
+            }
+        }
+        throw new IllegalStateException("Too many infractions created at " + infraction.getTimeCreated() + ".");
+    }
+
+    /**
+     * Remember the id an infraction was loaded with.
+     */
+    static void assign(Infraction infraction, InfractionId id) {
+        ASSIGNED.put(infraction, id);
+    }
+
+    public long longValue() {
+        return value;
+    }
+
+    public long getTimeCreated() {
+        return value >>> SEQUENCE_BITS;
+    }
+
+    public int getSequence() {
+        return (int) (value & ((1 << SEQUENCE_BITS) - 1));
+    }
+
+    @Override
+    public int compareTo(InfractionId other) {
+        return value < other.value ? -1 : value == other.value ? 0 : 1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof InfractionId && ((InfractionId) other).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (value ^ (value >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder(16);
+        toLetters(string, getTimeCreated());
+        if (getSequence() > 0) toLetters(string.append(SEQUENCE), getSequence());
+        return string.toString();
+    }
+
+    private static void toLetters(StringBuilder string, long number) {
+        for (char digit : Long.toString(number).toCharArray())
+            string.append(LETTERS.charAt(digit - '0'));
+    }
+
+    private static long fromLetters(String string, int from, int to) {
+        if (from >= to) throw new IllegalArgumentException("Not an infraction id: " + string);
+        long number = 0;
+        for (int i = from; i < to; i++) {
+            int digit = LETTERS.indexOf(string.charAt(i));
+            if (digit < 0) throw new IllegalArgumentException("Not an infraction id: " + string);
+            number = number * 10 + digit;
+        }
+        return number;
+    }
+}
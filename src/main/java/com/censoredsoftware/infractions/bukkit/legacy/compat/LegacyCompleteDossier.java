@@ -19,44 +19,62 @@ package com.censoredsoftware.infractions.bukkit.legacy.compat;
 import com.censoredsoftware.infractions.bukkit.Infraction;
 import com.censoredsoftware.infractions.bukkit.dossier.CompleteDossier;
 import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.AddressIndex;
+import com.censoredsoftware.infractions.bukkit.legacy.data.AltGraph;
+import com.censoredsoftware.infractions.bukkit.legacy.data.NameIndex;
+import com.censoredsoftware.infractions.bukkit.legacy.data.SubnetTree;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.net.InetAddresses;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
 public class LegacyCompleteDossier extends LegacyDossier implements CompleteDossier {
     public LegacyCompleteDossier(UUID mojangId, String lastKnownName, Set<Infraction> infractions) {
         super(mojangId, infractions);
-        this.lastKnownName = lastKnownName;
+        publish(snapshot(), snapshot().withName(lastKnownName, null));
+        NameIndex.add(mojangId, lastKnownName);
     }
 
-    public LegacyCompleteDossier(UUID mojangId, String lastKnownName, Set<String> rawInfractions, Void ignored) {
+    public LegacyCompleteDossier(UUID mojangId, String lastKnownName, long[] rawInfractions, Void ignored) {
         super(mojangId, rawInfractions, ignored);
-        this.lastKnownName = lastKnownName;
+        publish(snapshot(), snapshot().withName(lastKnownName, null));
+        NameIndex.add(mojangId, lastKnownName);
     }
 
     @Override
     public OfflinePlayer getOfflinePlayer() {
-        return Bukkit.getOfflinePlayer(this.lastKnownName);
+        return Bukkit.getOfflinePlayer(getLastKnownName());
     }
 
     @Override
     public String getLastKnownName() {
-        return this.lastKnownName;
+        return snapshot().lastKnownName;
+    }
+
+    /**
+     * @return When the player last logged in, or null if that was before this was tracked.
+     */
+    public Long getLastSeen() {
+        return snapshot().lastSeen;
     }
 
     @Override
     public Set<InetAddress> getAssociatedIPAddresses() {
-        return Sets.newHashSet(Collections2.transform(this.ipAddresses, new Function<String, InetAddress>() {
+        return Sets.newHashSet(Collections2.transform(snapshot().ipAddresses, new Function<String, InetAddress>() {
             @Override
             public InetAddress apply(String s) {
+                // Literals are parsed without the resolver, only old host names still need it.
+                if (InetAddresses.isInetAddress(s)) return InetAddresses.forString(s);
                 try {
                     return InetAddress.getByName(s);
                 } catch (UnknownHostException e) {
@@ -66,16 +84,45 @@ public class LegacyCompleteDossier extends LegacyDossier implements CompleteDoss
         }));
     }
 
+    /**
+     * @return The addresses as stored, an immutable view of one point in time.
+     */
     public Set<String> getRawAssociatedIPAddresses() {
-        return this.ipAddresses;
+        return snapshot().ipAddresses;
     }
 
     public void addIPAddress(String address) {
-        this.ipAddresses.add(address);
+        while (true) {
+            Snapshot snapshot = snapshot();
+            if (snapshot.ipAddresses.contains(address)) return;
+            List<String> addresses = Lists.newArrayList(snapshot.ipAddresses);
+            addresses.add(address);
+            if (publish(snapshot, snapshot.withAddresses(addresses))) break;
+        }
+        AddressIndex.add(getId(), address);
+        AltGraph.add(getId(), address);
+        SubnetTree.add(getId(), address);
+        markDirty();
     }
 
     public void removeIPAddress(InetAddress address) {
-        this.ipAddresses.remove(address.getHostName());
+        List<String> removed;
+        while (true) {
+            Snapshot snapshot = snapshot();
+            List<String> kept = Lists.newArrayList();
+            removed = Lists.newArrayList();
+            for (String stored : snapshot.ipAddresses)
+                if (AddressIndex.contains(stored, address)) removed.add(stored);
+                else kept.add(stored);
+            if (removed.isEmpty()) return;
+            if (publish(snapshot, snapshot.withAddresses(kept))) break;
+        }
+        for (String stored : removed) {
+            AddressIndex.remove(getId(), stored);
+            AltGraph.remove(getId(), stored);
+            SubnetTree.remove(getId(), stored);
+        }
+        markDirty();
     }
 
     @Override
@@ -93,8 +140,16 @@ public class LegacyCompleteDossier extends LegacyDossier implements CompleteDoss
         Bukkit.getScheduler().scheduleAsyncDelayedTask(InfractionsPlugin.getInst(), new Runnable() {
             @Override
             public void run() {
-                if (player.isOnline()) addIPAddress(player.getAddress().getHostName());
-                dossier.lastKnownName = player.getName();
+                if (player.isOnline()) addIPAddress(player.getAddress().getAddress().getHostAddress());
+                String name = player.getName();
+                while (true) {
+                    Snapshot snapshot = dossier.snapshot();
+                    long now = System.currentTimeMillis();
+                    if (!dossier.publish(snapshot, snapshot.withName(name, now))) continue;
+                    NameIndex.add(dossier.getId(), name, now);
+                    break;
+                }
+                dossier.markDirty();
             }
         }, 40);
     }
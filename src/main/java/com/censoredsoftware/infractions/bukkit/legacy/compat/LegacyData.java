@@ -26,9 +26,6 @@ import com.censoredsoftware.infractions.bukkit.issuer.Issuer;
 import com.censoredsoftware.infractions.bukkit.issuer.IssuerType;
 import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
-import com.censoredsoftware.infractions.bukkit.legacy.data.file.FileDataManager;
-import com.censoredsoftware.infractions.bukkit.legacy.data.file.InfractionsFile;
-import com.censoredsoftware.infractions.bukkit.legacy.data.file.YamlFileUtil;
 import com.censoredsoftware.infractions.bukkit.legacy.util.MiscUtil;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
@@ -38,8 +35,6 @@ import com.google.common.collect.Sets;
 import net.minecraft.util.com.google.common.base.Predicate;
 import net.minecraft.util.com.google.common.collect.Iterables;
 import org.bukkit.Bukkit;
-import org.bukkit.configuration.Configuration;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -123,13 +118,10 @@ public class LegacyData implements Runnable, Listener {
         log.warning("THIS WILL CAUSE LAG FOR A FEW MOMENTS.");
         log.warning("--------------------------------------");
 
-        InfractionsFile file = ((FileDataManager) DataManager.getManager()).yamlFiles.get(LegacyDossier.class);
-        Configuration config = YamlFileUtil.getConfiguration(file.getDirectoryPath(), file.getFullFileName());
-
         Collection<String> names = Collections2.transform(Collections2.filter(Infractions.allDossiers(), new com.google.common.base.Predicate<Dossier>() {
             @Override
             public boolean apply(Dossier dossier) {
-                return dossier instanceof LegacyCompleteDossier && !((LegacyCompleteDossier) dossier).confirmedValid;
+                return dossier instanceof LegacyCompleteDossier && !((LegacyCompleteDossier) dossier).isConfirmedValid();
             }
         }), new Function<Dossier, String>() {
             @Override
@@ -145,7 +137,7 @@ public class LegacyData implements Runnable, Listener {
             Map<String, UUID> namesAndIds = fetcher.call();
 
             for (Dossier dossier : Infractions.allDossiers()) {
-                if (((LegacyDossier) dossier).confirmedValid) {
+                if (((LegacyDossier) dossier).isConfirmedValid()) {
                     continue;
                 }
                 UUID id = dossier.getId();
@@ -156,7 +148,7 @@ public class LegacyData implements Runnable, Listener {
                         log.info("UUID FOR \'" + completeDossier.getLastKnownName() + "\' IS VALID.");
                     } else {
                         try {
-                            ConfigurationSection data = config.getConfigurationSection(id.toString());
+                            Map<String, Object> data = ((LegacyDossier) dossier).serialize();
 
                             Set<Infraction> toAdd = Sets.newHashSet();
                             for (Infraction infraction : dossier.getInfractions()) {
@@ -166,8 +158,8 @@ public class LegacyData implements Runnable, Listener {
                             }
 
                             Infractions.removeDossier(dossier);
-                            LegacyDossier newDossier = LegacyCompleteDossier.of(actualId, data);
-                            newDossier.confirmedValid = true;
+                            LegacyDossier newDossier = (LegacyDossier) LegacyDossier.unserialize(actualId, data);
+                            newDossier.confirmValid();
                             Infractions.addDossier(newDossier);
 
                             for (Infraction infraction : toAdd) {
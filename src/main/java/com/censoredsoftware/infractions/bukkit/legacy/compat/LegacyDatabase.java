@@ -24,15 +24,10 @@ import com.censoredsoftware.infractions.bukkit.dossier.Dossier;
 import com.censoredsoftware.infractions.bukkit.evidence.Evidence;
 import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
-import com.censoredsoftware.infractions.bukkit.legacy.data.file.FileDataManager;
-import com.censoredsoftware.infractions.bukkit.legacy.data.file.InfractionsFile;
-import com.censoredsoftware.infractions.bukkit.legacy.data.file.YamlFileUtil;
-import com.google.common.base.Predicate;
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.apache.commons.lang.Validate;
-import org.bukkit.configuration.Configuration;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 
@@ -40,6 +35,7 @@ import java.net.InetAddress;
 import java.util.Collection;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
 
 public class LegacyDatabase implements Database {
     @Override
@@ -59,71 +55,87 @@ public class LegacyDatabase implements Database {
         }
 
         if (id != null) {
-            Dossier dossier = getDossier(id);
-            if (!(dossier instanceof CompleteDossier)) {
-                Validate.notNull(dossier, "DOSSIER");
-                Validate.notNull(id, "ID");
-                Validate.notNull(playerName, "PLAYER NAME");
-                dossier = dossier.complete(playerName);
-                DataManager.getManager().getMapFor(LegacyDossier.class).put(dossier.getId(), dossier);
-            }
-            return (CompleteDossier) getDossier(id);
+            Validate.notNull(playerName, "PLAYER NAME");
+            return complete(id, playerName);
         }
         throw new NullPointerException("No such player exists.");
     }
 
+    /**
+     * Complete the dossier stored under an id, unless another thread already did.
+     * <p/>
+     * The stored dossier is only swapped if it is still the incomplete one that was read, so a dossier completed
+     * (and changed) by a racing login or command is never overwritten.
+     */
+    private LegacyCompleteDossier complete(UUID id, String playerName) {
+        ConcurrentMap<UUID, Dossier> map = DataManager.getManager().getMapFor(LegacyDossier.class);
+        while (true) {
+            Dossier dossier = getDossier(id);
+            Validate.notNull(dossier, "DOSSIER");
+            if (dossier instanceof LegacyCompleteDossier) return (LegacyCompleteDossier) dossier;
+            Dossier completed = dossier.complete(playerName);
+            if (map.replace(id, dossier, completed)) return (LegacyCompleteDossier) completed;
+        }
+    }
+
+    /**
+     * Resolve the dossier of a player logging in from the id the server gave them, without the network.
+     * <p/>
+     * The server vouches for that id. A dossier stored under the offline-mode id of the same name was made before
+     * the account was known, so it is moved over the first time the player shows up. Other dossiers with the same
+     * name may belong to whoever had the name before, and are left alone.
+     */
     @Override
     public CompleteDossier getCompleteDossier(Player player) {
-        LegacyCompleteDossier dossier = (LegacyCompleteDossier) getCompleteDossier(player.getName());
+        UUID id = player.getUniqueId();
+        LegacyCompleteDossier complete = complete(id, player.getName());
 
         // Check for corrupt ID
-        if (!dossier.confirmedValid) {
-            try {
-                if (player.getUniqueId().equals(dossier.getId())) {
-                    dossier.confirmedValid = true;
-                } else {
-                    InfractionsFile file = ((FileDataManager) DataManager.getManager()).yamlFiles.get(LegacyDossier.class);
-                    Configuration config = YamlFileUtil.getConfiguration(file.getDirectoryPath(), file.getFullFileName());
-                    ConfigurationSection data = config.getConfigurationSection(dossier.getId().toString());
-
-                    Set<Infraction> toAdd = Sets.newHashSet();
-                    for (Infraction infraction : dossier.getInfractions()) {
-                        dossier.acquit(infraction);
-                        infraction.setPlayerId(player.getUniqueId());
-                        toAdd.add(infraction);
-                    }
-
-                    Infractions.removeDossier(dossier);
-                    LegacyCompleteDossier newDossier = (LegacyCompleteDossier) LegacyCompleteDossier.of(player.getUniqueId(), data);
-                    Infractions.addDossier(newDossier);
-
-                    for (Infraction infraction : toAdd) {
-                        newDossier.cite(infraction);
-                    }
-
-                    // Log it
-                    InfractionsPlugin.getInst().getLogger().warning("UUID FOR \'" + dossier.getLastKnownName() + "\' IS INVALID.");
-                    InfractionsPlugin.getInst().getLogger().warning("- OLD ID: " + dossier.getId().toString());
-                    InfractionsPlugin.getInst().getLogger().warning("- ACTUAL: " + player.getUniqueId().toString());
-
-                    dossier = newDossier;
-                }
-            } catch (Exception ignored) {
+        if (!complete.isConfirmedValid()) {
+            UUID offlineId = getOfflineId(player.getName());
+            if (!id.equals(offlineId)) {
+                LegacyDossier stale = DataManager.getManager().getFor(LegacyDossier.class, offlineId);
+                if (stale instanceof LegacyCompleteDossier && !stale.isConfirmedValid())
+                    moveInto((LegacyCompleteDossier) stale, complete);
             }
+            complete.confirmValid();
+            complete.markDirty();
         }
 
-        return dossier;
+        return complete;
+    }
+
+    /**
+     * @param playerName A player name.
+     * @return The id the server gives the name in offline mode.
+     */
+    public static UUID getOfflineId(String playerName) {
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + playerName).getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Move everything from a dossier stored under the wrong id into the right one.
+     */
+    private static void moveInto(LegacyCompleteDossier stale, LegacyCompleteDossier dossier) {
+        for (Infraction infraction : stale.getInfractions()) {
+            stale.acquit(infraction);
+            infraction.setPlayerId(dossier.getId());
+            dossier.cite(infraction);
+        }
+        for (String address : stale.getRawAssociatedIPAddresses())
+            dossier.addIPAddress(address);
+        Infractions.removeDossier(stale);
+
+        // Log it
+        InfractionsPlugin.getInst().getLogger().warning("UUID FOR \'" + dossier.getLastKnownName() + "\' IS INVALID.");
+        InfractionsPlugin.getInst().getLogger().warning("- OLD ID: " + stale.getId().toString());
+        InfractionsPlugin.getInst().getLogger().warning("- ACTUAL: " + dossier.getId().toString());
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public Set<CompleteDossier> getCompleteDossiers(final InetAddress address) {
-        return (Set<CompleteDossier>) (Set) Sets.filter(allDossiers(), new Predicate<Dossier>() {
-            @Override
-            public boolean apply(Dossier dossier) {
-                return dossier instanceof CompleteDossier && ((CompleteDossier) dossier).getAssociatedIPAddresses().contains(address);
-            }
-        });
+        return (Set<CompleteDossier>) (Set) Sets.newHashSet(DataManager.getManager().findDossiersByAddress(address));
     }
 
     @Override
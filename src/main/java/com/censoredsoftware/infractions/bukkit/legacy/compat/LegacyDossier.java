@@ -19,25 +19,109 @@ package com.censoredsoftware.infractions.bukkit.legacy.compat;
 import com.censoredsoftware.infractions.bukkit.Infraction;
 import com.censoredsoftware.infractions.bukkit.dossier.CompleteDossier;
 import com.censoredsoftware.infractions.bukkit.dossier.Dossier;
+import com.censoredsoftware.infractions.bukkit.legacy.data.AddressIndex;
+import com.censoredsoftware.infractions.bukkit.legacy.data.AltGraph;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataCodec;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
-import com.censoredsoftware.infractions.bukkit.legacy.data.DataProvider;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
-import com.censoredsoftware.infractions.bukkit.legacy.data.IdType;
-import com.censoredsoftware.infractions.bukkit.legacy.util.MiscUtil;
-import com.google.common.base.Function;
-import com.google.common.collect.Collections2;
+import com.censoredsoftware.infractions.bukkit.legacy.data.NameIndex;
+import com.censoredsoftware.infractions.bukkit.legacy.data.SubnetTree;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.bukkit.configuration.ConfigurationSection;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class LegacyDossier implements DataSerializable<UUID>, Dossier {
     private UUID mojangid;
-    private Set<String> infractions;
-    protected Set<String> ipAddresses;
-    protected String lastKnownName;
-    protected Boolean confirmedValid = false;
+    private final AtomicReference<Snapshot> state = new AtomicReference<Snapshot>(Snapshot.EMPTY);
+
+    /**
+     * Everything about a dossier that changes, at one point in time.
+     * <p/>
+     * A snapshot is never changed, every change publishes a new one with a compare-and-set, so readers get a
+     * consistent view without locks or copies.
+     */
+    protected static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[0], ImmutableSet.<String>of(), null, null, false, 0, false);
+
+        // Infraction ids, sorted.
+        final long[] infractions;
+        final ImmutableSet<String> ipAddresses;
+        final String lastKnownName;
+        final Long lastSeen;
+        final boolean confirmedValid;
+
+        // The sum of the infraction scores, once worked out.
+        final int score;
+        final boolean scored;
+
+        Snapshot(long[] infractions, ImmutableSet<String> ipAddresses, String lastKnownName, Long lastSeen, boolean confirmedValid, int score, boolean scored) {
+            this.infractions = infractions;
+            this.ipAddresses = ipAddresses;
+            this.lastKnownName = lastKnownName;
+            this.lastSeen = lastSeen;
+            this.confirmedValid = confirmedValid;
+            this.score = score;
+            this.scored = scored;
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(infractions, id) >= 0;
+        }
+
+        Snapshot withInfractions(long[] infractions) {
+            long[] sorted = infractions.clone();
+            Arrays.sort(sorted);
+            return new Snapshot(sorted, ipAddresses, lastKnownName, lastSeen, confirmedValid, 0, false);
+        }
+
+        /**
+         * @param change What the infraction changes the score by.
+         */
+        Snapshot withInfraction(long id, int change) {
+            int at = Arrays.binarySearch(infractions, id);
+            long[] ids = infractions;
+            if (at < 0) {
+                at = -at - 1;
+                ids = new long[infractions.length + 1];
+                System.arraycopy(infractions, 0, ids, 0, at);
+                ids[at] = id;
+                System.arraycopy(infractions, at, ids, at + 1, infractions.length - at);
+            }
+            return new Snapshot(ids, ipAddresses, lastKnownName, lastSeen, confirmedValid, score + change, scored);
+        }
+
+        /**
+         * @param change What removing the infraction changes the score by.
+         */
+        Snapshot withoutInfraction(long id, int change) {
+            int at = Arrays.binarySearch(infractions, id);
+            if (at < 0) return this;
+            long[] ids = new long[infractions.length - 1];
+            System.arraycopy(infractions, 0, ids, 0, at);
+            System.arraycopy(infractions, at + 1, ids, at, ids.length - at);
+            return new Snapshot(ids, ipAddresses, lastKnownName, lastSeen, confirmedValid, score + change, scored);
+        }
+
+        Snapshot withScore(int score) {
+            return new Snapshot(infractions, ipAddresses, lastKnownName, lastSeen, confirmedValid, score, true);
+        }
+
+        Snapshot withAddresses(Collection<String> ipAddresses) {
+            return new Snapshot(infractions, ImmutableSet.copyOf(ipAddresses), lastKnownName, lastSeen, confirmedValid, score, scored);
+        }
+
+        Snapshot withName(String lastKnownName, Long lastSeen) {
+            return new Snapshot(infractions, ipAddresses, lastKnownName, lastSeen, confirmedValid, score, scored);
+        }
+
+        Snapshot withConfirmedValid(boolean confirmedValid) {
+            return new Snapshot(infractions, ipAddresses, lastKnownName, lastSeen, confirmedValid, score, scored);
+        }
+    }
 
     public LegacyDossier(UUID mojangId, Infraction... infractions) {
         this(mojangId, Sets.newHashSet(infractions));
@@ -45,24 +129,33 @@ public class LegacyDossier implements DataSerializable<UUID>, Dossier {
 
     public LegacyDossier(UUID mojangId, Set<Infraction> infractions) {
         this.mojangid = mojangId;
-        this.infractions = Sets.newHashSet(Collections2.transform(infractions, new Function<Infraction, String>() {
-            @Override
-            public String apply(Infraction infraction) {
-                String id = MiscUtil.getInfractionId(infraction);
-                DataManager.getManager().getMapFor(LegacyInfraction.class).put(MiscUtil.getInfractionId(infraction), LegacyInfraction.of(infraction));
-                return id;
-            }
-        }));
-        this.ipAddresses = Sets.newHashSet();
+        long[] ids = new long[infractions.size()];
+        int n = 0;
+        for (Infraction infraction : infractions) {
+            LegacyInfraction stored = LegacyInfraction.of(infraction);
+            DataManager.getManager().<InfractionId, LegacyInfraction, LegacyInfraction>getMapFor(LegacyInfraction.class).put(stored.getId(), stored);
+            ids[n++] = stored.getId().longValue();
+        }
+        state.set(Snapshot.EMPTY.withInfractions(Arrays.copyOf(ids, n)));
     }
 
-    public LegacyDossier(UUID mojangId, Set<String> rawInfractions, Void ignored) {
+    public LegacyDossier(UUID mojangId, long[] rawInfractions, Void ignored) {
         this.mojangid = mojangId;
-        this.infractions = rawInfractions;
-        this.ipAddresses = Sets.newHashSet();
+        state.set(Snapshot.EMPTY.withInfractions(rawInfractions));
     }
 
-    @DataProvider(idType = IdType.UUID)
+    public static final DataCodec<UUID, LegacyDossier> CODEC = new DataCodec<UUID, LegacyDossier>() {
+        @Override
+        public LegacyDossier decode(UUID id, ConfigurationSection conf) {
+            return of(id, conf);
+        }
+
+        @Override
+        public Map<String, Object> encode(LegacyDossier value) {
+            return value.serialize();
+        }
+    };
+
     public static LegacyDossier of(UUID id, ConfigurationSection conf) {
         return (LegacyDossier) unserialize(id, conf.getValues(true));
     }
@@ -72,45 +165,140 @@ public class LegacyDossier implements DataSerializable<UUID>, Dossier {
         return mojangid;
     }
 
+    /**
+     * @return The current state of this dossier.
+     */
+    protected Snapshot snapshot() {
+        return state.get();
+    }
+
+    /**
+     * Publish a change, unless the dossier changed since the expected snapshot was taken.
+     *
+     * @param expected The snapshot the change was made from.
+     * @param next     The changed snapshot.
+     * @return The change was published, if not take a new snapshot and try again.
+     */
+    protected boolean publish(Snapshot expected, Snapshot next) {
+        return state.compareAndSet(expected, next);
+    }
+
     @Override
     public int getScore() {
-        int score = 0;
-        for (Infraction infraction : getInfractions())
-            score += infraction.getScore();
-        return score;
+        Snapshot snapshot = state.get();
+        if (snapshot.scored) return snapshot.score;
+        int sum = sumScores(snapshot.infractions);
+        publish(snapshot, snapshot.withScore(sum));
+        return sum;
+    }
+
+    /**
+     * Work the score out again from the infractions and fix the cached one if it was off.
+     *
+     * @return The cached score was correct, or there was none yet.
+     */
+    public boolean verifyScore() {
+        while (true) {
+            Snapshot snapshot = state.get();
+            if (!snapshot.scored) return true;
+            int sum = sumScores(snapshot.infractions);
+            if (publish(snapshot, snapshot.withScore(sum))) return snapshot.score == sum;
+        }
+    }
+
+    private static int sumScores(long[] ids) {
+        int sum = 0;
+        for (long id : ids)
+            sum += scoreOf(stored(id));
+        return sum;
+    }
+
+    public boolean isConfirmedValid() {
+        return state.get().confirmedValid;
+    }
+
+    /**
+     * Mark the id of this dossier as checked against Mojang.
+     */
+    public void confirmValid() {
+        while (true) {
+            Snapshot snapshot = state.get();
+            if (snapshot.confirmedValid || publish(snapshot, snapshot.withConfirmedValid(true))) return;
+        }
     }
 
     @Override
     public Set<Infraction> getInfractions() {
-        return Sets.newHashSet(Collections2.transform(infractions, new Function<String, Infraction>() {
-            @Override
-            public Infraction apply(String s) {
-                return ((LegacyInfraction) DataManager.getManager().getFor(LegacyInfraction.class, s)).toInfraction();
-            }
-        }));
+        Set<Infraction> found = Sets.newHashSet();
+        for (long id : state.get().infractions) {
+            LegacyInfraction infraction = stored(id);
+            if (infraction != null) found.add(infraction.toInfraction());
+        }
+        return found;
     }
 
+    /**
+     * @param id An infraction id.
+     * @return The infraction, if it is in this dossier.
+     */
+    public Infraction getInfraction(InfractionId id) {
+        if (!state.get().contains(id.longValue())) return null;
+        LegacyInfraction infraction = stored(id.longValue());
+        return infraction != null ? infraction.toInfraction() : null;
+    }
+
+    /**
+     * @return The ids of the infractions in their letter form.
+     */
     public Set<String> getInfractionIds() {
-        return infractions;
+        Set<String> ids = Sets.newHashSet();
+        for (long id : state.get().infractions)
+            ids.add(InfractionId.valueOf(id).toString());
+        return ids;
     }
 
     @Override
     public void cite(Infraction infraction) {
-        String id = MiscUtil.getInfractionId(infraction);
-        DataManager.getManager().getMapFor(LegacyInfraction.class).put(id, LegacyInfraction.of(infraction));
-        infractions.add(id);
+        LegacyInfraction stored = LegacyInfraction.of(infraction);
+        LegacyInfraction old = DataManager.getManager().<InfractionId, LegacyInfraction, LegacyInfraction>getMapFor(LegacyInfraction.class).put(stored.getId(), stored);
+        long id = stored.getId().longValue();
+        while (true) {
+            Snapshot snapshot = state.get();
+            int change = infraction.getScore() - (snapshot.contains(id) ? scoreOf(old) : 0);
+            if (publish(snapshot, snapshot.withInfraction(id, change))) break;
+        }
+        markDirty();
     }
 
     @Override
     public void acquit(Infraction infraction) {
-        String id = MiscUtil.getInfractionId(infraction);
-        DataManager.getManager().getMapFor(LegacyInfraction.class).remove(id);
-        infractions.remove(id);
+        InfractionId id = InfractionId.of(infraction);
+        LegacyInfraction old = DataManager.getManager().<InfractionId, LegacyInfraction, LegacyInfraction>getMapFor(LegacyInfraction.class).remove(id);
+        while (true) {
+            Snapshot snapshot = state.get();
+            if (publish(snapshot, snapshot.withoutInfraction(id.longValue(), -scoreOf(old)))) break;
+        }
+        markDirty();
+    }
+
+    private static LegacyInfraction stored(long id) {
+        return DataManager.getManager().getFor(LegacyInfraction.class, InfractionId.valueOf(id));
+    }
+
+    private static int scoreOf(LegacyInfraction infraction) {
+        return infraction != null && infraction.toInfraction() != null ? infraction.toInfraction().getScore() : 0;
+    }
+
+    /**
+     * Flag this dossier for the next save after changing it in place.
+     */
+    protected void markDirty() {
+        DataManager.getManager().markDirty(LegacyDossier.class, getId());
     }
 
     @Override
     public CompleteDossier complete(String playerName) {
-        return new LegacyCompleteDossier(getId(), playerName, infractions, null);
+        return new LegacyCompleteDossier(getId(), playerName, state.get().infractions, null);
     }
 
     @Override
@@ -120,40 +308,49 @@ public class LegacyDossier implements DataSerializable<UUID>, Dossier {
 
     @Override
     public Map<String, Object> serialize() {
+        Snapshot snapshot = state.get();
         Map<String, Object> map = new HashMap<String, Object>();
-        if (lastKnownName != null) map.put("lastKnownName", lastKnownName);
-        map.put("confirmedValid", confirmedValid);
+        if (snapshot.lastKnownName != null) map.put("lastKnownName", snapshot.lastKnownName);
+        if (snapshot.lastSeen != null) map.put("lastSeen", snapshot.lastSeen);
+        map.put("confirmedValid", snapshot.confirmedValid);
 
-        List<String> infractionList;
-        if (infractions != null) infractionList = Lists.newArrayList(infractions);
-        else infractionList = Lists.newArrayList();
-        List<String> ipList;
-        if (ipAddresses != null) ipList = Lists.newArrayList(ipAddresses);
-        else ipList = Lists.newArrayList();
+        List<String> infractionList = Lists.newArrayListWithCapacity(snapshot.infractions.length);
+        for (long id : snapshot.infractions)
+            infractionList.add(InfractionId.valueOf(id).toString());
 
         map.put("infractions", infractionList);
-        map.put("addresses", ipList);
+        map.put("addresses", Lists.newArrayList(snapshot.ipAddresses));
 
         return map;
     }
 
     @SuppressWarnings("unchecked")
     public static Dossier unserialize(UUID id, Map<String, Object> map) {
-        LegacyDossier dossier = new LegacyDossier(id);
-        if (map.containsKey("lastKnownName"))
-            dossier = (LegacyDossier) dossier.complete(map.get("lastKnownName").toString());
+        String lastKnownName = map.containsKey("lastKnownName") ? map.get("lastKnownName").toString() : null;
+        Long lastSeen = map.containsKey("lastSeen") ? Long.parseLong(map.get("lastSeen").toString()) : null;
+        boolean confirmedValid = map.containsKey("confirmedValid") && Boolean.parseBoolean(map.get("confirmedValid").toString());
 
-        if (map.containsKey("confirmedValid"))
-            dossier.confirmedValid = Boolean.parseBoolean(map.get("confirmedValid").toString());
-
-        if (map.containsKey("infractions"))
-            dossier.infractions = Sets.newHashSet((List<String>) map.get("infractions"));
-        else dossier.infractions = Sets.newHashSet();
+        List<String> infractionList = map.containsKey("infractions") ? (List<String>) map.get("infractions") : Collections.<String>emptyList();
+        long[] infractions = new long[infractionList.size()];
+        int n = 0;
+        for (String infraction : infractionList) {
+            try {
+                infractions[n++] = InfractionId.parse(infraction).longValue();
+            } catch (IllegalArgumentException ignored) {
+                n--;
+            }
+        }
 
-        if (map.containsKey("addresses")) dossier.ipAddresses = Sets.newHashSet((List<String>) map.get("addresses"));
-        else dossier.ipAddresses = Sets.newHashSet();
+        List<String> addresses = map.containsKey("addresses") ? (List<String>) map.get("addresses") : Collections.<String>emptyList();
+        for (String address : addresses) {
+            AddressIndex.add(id, address);
+            AltGraph.add(id, address);
+            SubnetTree.add(id, address);
+        }
 
-        dossier.mojangid = id;
+        LegacyDossier dossier = lastKnownName != null ? new LegacyCompleteDossier(id, lastKnownName, Arrays.copyOf(infractions, n), null) : new LegacyDossier(id, Arrays.copyOf(infractions, n), null);
+        dossier.state.set(dossier.state.get().withAddresses(addresses).withName(lastKnownName, lastSeen).withConfirmedValid(confirmedValid));
+        if (lastSeen != null) NameIndex.add(id, lastKnownName, lastSeen);
         return dossier;
     }
 }
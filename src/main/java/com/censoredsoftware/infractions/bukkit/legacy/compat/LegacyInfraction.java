@@ -20,12 +20,11 @@ import com.censoredsoftware.infractions.bukkit.Infraction;
 import com.censoredsoftware.infractions.bukkit.evidence.Evidence;
 import com.censoredsoftware.infractions.bukkit.evidence.EvidenceType;
 import com.censoredsoftware.infractions.bukkit.issuer.Issuer;
-import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
-import com.censoredsoftware.infractions.bukkit.legacy.data.DataProvider;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataCodec;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
-import com.censoredsoftware.infractions.bukkit.legacy.data.IdType;
-import com.censoredsoftware.infractions.bukkit.legacy.util.MiscUtil;
+import com.censoredsoftware.infractions.bukkit.legacy.data.StringDictionary;
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -34,28 +33,40 @@ import org.bukkit.configuration.ConfigurationSection;
 
 import java.util.*;
 
-public class LegacyInfraction implements DataSerializable<String> {
-    private String id;
+public class LegacyInfraction implements DataSerializable<InfractionId> {
+    private InfractionId id;
     private Infraction infraction;
 
     private LegacyInfraction() {
     }
 
     private LegacyInfraction(Infraction infraction) {
-        id = MiscUtil.getInfractionId(infraction);
+        id = InfractionId.of(infraction);
         this.infraction = infraction;
     }
 
-    @DataProvider(idType = IdType.STRING)
-    public static LegacyInfraction of(String id, ConfigurationSection conf) {
+    public static final DataCodec<InfractionId, LegacyInfraction> CODEC = new DataCodec<InfractionId, LegacyInfraction>() {
+        @Override
+        public LegacyInfraction decode(InfractionId id, ConfigurationSection conf) {
+            return of(id, conf);
+        }
+
+        @Override
+        public Map<String, Object> encode(LegacyInfraction value) {
+            return value.serialize();
+        }
+    };
+
+    public static LegacyInfraction of(InfractionId id, ConfigurationSection conf) {
         LegacyInfraction data = new LegacyInfraction();
         data.id = id;
         data.infraction = unserialize(conf.getValues(true));
+        if (data.infraction != null) InfractionId.assign(data.infraction, id);
         return data;
     }
 
     @Override
-    public String getId() {
+    public InfractionId getId() {
         return id;
     }
 
@@ -72,16 +83,16 @@ public class LegacyInfraction implements DataSerializable<String> {
     public static Infraction unserialize(Map<String, Object> map) {
         try {
             UUID playerId = UUID.fromString(map.get("playerId").toString());
-            Issuer issuer = ((LegacyIssuer) DataManager.getManager().getFor(LegacyIssuer.class, map.get("issuer").toString())).toIssuer();
+            Issuer issuer = Preconditions.checkNotNull(LegacyIssuer.find(map.get("issuer").toString()));
             Long timeCreated = Long.parseLong(map.get("timeCreated").toString());
-            String reason = map.get("reason").toString();
+            String reason = StringDictionary.intern(map.get("reason").toString());
             Integer score = Integer.parseInt(map.get("score").toString());
             Set<Evidence> evidence = Sets.newHashSet();
             if (map.containsKey("evidence") && !((List<Map<String, Object>>) map.get("evidence")).isEmpty()) {
                 evidence = Sets.newHashSet(Collections2.transform((List<Map<String, Object>>) map.get("evidence"), new Function<Map<String, Object>, Evidence>() {
                     @Override
                     public Evidence apply(Map<String, Object> map) {
-                        Issuer issuer = ((LegacyIssuer) DataManager.getManager().getFor(LegacyIssuer.class, map.get("issuer").toString())).toIssuer();
+                        Issuer issuer = Preconditions.checkNotNull(LegacyIssuer.find(map.get("issuer").toString()));
                         EvidenceType type = EvidenceType.valueOf(map.get("type").toString());
                         Long timeCreated = Long.parseLong(map.get("timeCreated").toString());
                         String data = map.get("data").toString();
@@ -103,7 +114,7 @@ public class LegacyInfraction implements DataSerializable<String> {
         map.put("playerId", infraction.getPlayerId().toString());
         Validate.notNull(infraction, "Infraction");
         Validate.notNull(infraction.getIssuer(), "Issuer");
-        LegacyIssuer.of(infraction.getIssuer()).saveIfAbsent();
+        LegacyIssuer.register(infraction.getIssuer());
         map.put("issuer", infraction.getIssuer().getId());
         map.put("timeCreated", infraction.getTimeCreated());
         map.put("reason", infraction.getReason());
@@ -113,7 +124,7 @@ public class LegacyInfraction implements DataSerializable<String> {
             public Map<String, Object> apply(Evidence evidence) {
                 Map<String, Object> map = new HashMap<String, Object>();
                 map.put("data", evidence.getRawData());
-                LegacyIssuer.of(evidence.getIssuer()).saveIfAbsent();
+                LegacyIssuer.register(evidence.getIssuer());
                 map.put("issuer", evidence.getIssuer().getId());
                 map.put("timeCreated", evidence.getTimeCreated());
                 map.put("type", evidence.getType().name());
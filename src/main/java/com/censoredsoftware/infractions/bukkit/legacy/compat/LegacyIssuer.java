@@ -18,24 +18,30 @@ package com.censoredsoftware.infractions.bukkit.legacy.compat;
 
 import com.censoredsoftware.infractions.bukkit.issuer.Issuer;
 import com.censoredsoftware.infractions.bukkit.issuer.IssuerType;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataCodec;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
-import com.censoredsoftware.infractions.bukkit.legacy.data.DataProvider;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
-import com.censoredsoftware.infractions.bukkit.legacy.data.IdType;
+import com.censoredsoftware.infractions.bukkit.legacy.data.StringDictionary;
 import com.censoredsoftware.infractions.bukkit.origin.Origin;
 import com.censoredsoftware.infractions.bukkit.origin.OriginType;
 import com.google.common.base.Function;
+import com.google.common.collect.Maps;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.MemorySection;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 // FIXME Origin is ignored in version 0.5.
 
 public class LegacyIssuer implements DataSerializable<String> {
     private static final Issuer UNKNOWN = new Issuer(IssuerType.UNKNOWN, "UNKNOWN");
 
+    // Canonical issuers and origins by id, so each is held once however many records refer to it.
+    private static final ConcurrentMap<String, Issuer> ISSUERS = Maps.newConcurrentMap();
+    private static final ConcurrentMap<String, Origin> ORIGINS = Maps.newConcurrentMap();
+
     private Issuer issuer;
 
     private LegacyIssuer() {
@@ -45,10 +51,21 @@ public class LegacyIssuer implements DataSerializable<String> {
         this.issuer = issuer;
     }
 
-    @DataProvider(idType = IdType.STRING)
+    public static final DataCodec<String, LegacyIssuer> CODEC = new DataCodec<String, LegacyIssuer>() {
+        @Override
+        public LegacyIssuer decode(String id, ConfigurationSection conf) {
+            return of(id, conf);
+        }
+
+        @Override
+        public Map<String, Object> encode(LegacyIssuer value) {
+            return value.serialize();
+        }
+    };
+
     public static LegacyIssuer of(String ignored, ConfigurationSection conf) {
         LegacyIssuer data = new LegacyIssuer();
-        data.issuer = unserialize(conf.getValues(true));
+        data.issuer = intern(unserialize(conf.getValues(true)));
         return data;
     }
 
@@ -69,7 +86,7 @@ public class LegacyIssuer implements DataSerializable<String> {
     @SuppressWarnings("unchecked")
     public static Issuer unserialize(Map<String, Object> map) {
         IssuerType type = IssuerType.valueOf(map.get("type").toString());
-        String id = map.get("id").toString();
+        String id = StringDictionary.intern(map.get("id").toString());
         Origin origin = unpackOrigin(((MemorySection) map.get("origin")).getValues(true));
         return new Issuer(type, id, origin);
     }
@@ -78,7 +95,7 @@ public class LegacyIssuer implements DataSerializable<String> {
         String id = map.get("id").toString();
         String name = map.get("name").toString();
         OriginType type = OriginType.valueOf(map.get("type").toString());
-        return new Origin(id, name, type);
+        return intern(new Origin(id, name, type));
     }
 
     public static Map<String, Object> serialize(Issuer issuer) {
@@ -98,18 +115,56 @@ public class LegacyIssuer implements DataSerializable<String> {
         return map;
     }
 
-    @SuppressWarnings("unchecked")
     public static Issuer of(final String id) {
-        Map<String, LegacyIssuer> data = DataManager.getManager().getMapFor(LegacyIssuer.class);
-        return data.containsKey(id) ? data.get(id).toIssuer() : UNKNOWN;
+        Issuer issuer = find(id);
+        return issuer != null ? issuer : UNKNOWN;
+    }
+
+    /**
+     * @param id The issuer id.
+     * @return The stored issuer, or null if there is none.
+     */
+    public static Issuer find(String id) {
+        Issuer issuer = ISSUERS.get(id);
+        if (issuer != null) return issuer;
+        LegacyIssuer data = DataManager.getManager().getFor(LegacyIssuer.class, id);
+        return data != null ? intern(data.toIssuer()) : null;
     }
 
     public static LegacyIssuer of(Issuer issuer) {
-        LegacyIssuer legacyIssuer = new LegacyIssuer(issuer);
-        legacyIssuer.saveIfAbsent();
+        register(issuer);
+        return DataManager.getManager().getFor(LegacyIssuer.class, issuer.getId());
+    }
+
+    /**
+     * Store an issuer unless one with its id is already known. Known issuers cost a single lookup.
+     *
+     * @param issuer The issuer.
+     * @return The canonical issuer with that id.
+     */
+    public static Issuer register(Issuer issuer) {
+        Issuer known = ISSUERS.get(issuer.getId());
+        if (known != null) return known;
+        LegacyIssuer stored = DataManager.getManager().<String, LegacyIssuer, LegacyIssuer>getMapFor(LegacyIssuer.class).putIfAbsent(issuer.getId(), new LegacyIssuer(issuer));
+        return intern(stored != null ? stored.toIssuer() : issuer);
+    }
+
+    /**
+     * @param issuer An issuer.
+     * @return The canonical issuer with its id.
+     */
+    public static Issuer intern(Issuer issuer) {
+        Issuer known = ISSUERS.putIfAbsent(issuer.getId(), issuer);
+        return known != null ? known : issuer;
+    }
 
-        Map<String, LegacyIssuer> data = DataManager.getManager().getMapFor(LegacyIssuer.class);
-        return data.containsKey(issuer.getId()) ? data.get(issuer.getId()) : legacyIssuer;
+    /**
+     * @param origin An origin.
+     * @return The canonical origin with its id.
+     */
+    public static Origin intern(Origin origin) {
+        Origin known = ORIGINS.putIfAbsent(origin.getId(), origin);
+        return known != null ? known : origin;
     }
 
     public void saveIfAbsent() {
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy.compat;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.AtomicFile;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import java.io.*;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which name belongs to which id, so repeat lookups don't go to Mojang.
+ * <p/>
+ * Fed by logins, by {@link UUIDFetcher} answers and by the server's own usercache.json. Entries expire after
+ * names.cache_days, and once names.cache_size is reached the least recently used one is dropped. The cache is
+ * kept in "names.dat" between restarts.
+ */
+public class NameCache {
+    private static final int VERSION = 1;
+    private static final File FILE = new File(InfractionsPlugin.getInst().getDataFolder(), "names.dat");
+    private static final File SERVER_CACHE = new File("usercache.json");
+    private static final int MAX_SIZE = Math.max(16, InfractionsPlugin.getInst().getConfig().getInt("names.cache_size", 10000));
+    private static final long TTL = TimeUnit.DAYS.toMillis(Math.max(1, InfractionsPlugin.getInst().getConfig().getInt("names.cache_days", 30)));
+
+    // Both guarded by BY_NAME, which alone keeps the access order for the LRU and evicts from both.
+    private static final Map<String, Entry> BY_NAME = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() <= MAX_SIZE) return false;
+            if (BY_ID.get(eldest.getValue().id) == eldest.getValue()) BY_ID.remove(eldest.getValue().id);
+            dirty = true;
+            return true;
+        }
+    };
+    private static final Map<UUID, Entry> BY_ID = new HashMap<UUID, Entry>();
+
+    private static volatile boolean dirty = false;
+
+    private static final class Entry {
+        final String name;
+        final UUID id;
+        final long expires;
+
+        Entry(String name, UUID id, long expires) {
+            this.name = name;
+            this.id = id;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Private constructor.
+     */
+    private NameCache() {
+    }
+
+    /**
+     * @param name A player name, in any case.
+     * @return Their id, or null if it isn't cached.
+     */
+    public static UUID getId(String name) {
+        if (name == null) return null;
+        synchronized (BY_NAME) {
+            Entry entry = BY_NAME.get(name.toLowerCase());
+            if (entry == null) return null;
+            if (entry.expires > System.currentTimeMillis()) return entry.id;
+            forget(entry);
+            return null;
+        }
+    }
+
+    /**
+     * @param id A player id.
+     * @return Their name, or null if it isn't cached.
+     */
+    public static String getName(UUID id) {
+        if (id == null) return null;
+        synchronized (BY_NAME) {
+            Entry entry = BY_ID.get(id);
+            if (entry == null) return null;
+            if (entry.expires > System.currentTimeMillis()) {
+                // Counts as a use for the LRU.
+                BY_NAME.get(entry.name.toLowerCase());
+                return entry.name;
+            }
+            forget(entry);
+            return null;
+        }
+    }
+
+    /**
+     * Remember a name and id that belong together.
+     *
+     * @param name The name.
+     * @param id   The id.
+     */
+    public static void put(String name, UUID id) {
+        put(name, id, System.currentTimeMillis() + TTL);
+    }
+
+    private static void put(String name, UUID id, long expires) {
+        if (name == null || id == null || expires <= System.currentTimeMillis()) return;
+        synchronized (BY_NAME) {
+            Entry old = BY_NAME.get(name.toLowerCase());
+            if (old != null && old.id.equals(id) && old.name.equals(name) && old.expires >= expires) return;
+
+            // A name changed hands, or an id changed names, the older pairing is wrong now.
+            if (old != null) forget(old);
+            old = BY_ID.get(id);
+            if (old != null) forget(old);
+
+            Entry entry = new Entry(name, id, expires);
+            BY_NAME.put(name.toLowerCase(), entry);
+            BY_ID.put(id, entry);
+            dirty = true;
+        }
+    }
+
+    private static void forget(Entry entry) {
+        if (BY_NAME.get(entry.name.toLowerCase()) == entry) BY_NAME.remove(entry.name.toLowerCase());
+        if (BY_ID.get(entry.id) == entry) BY_ID.remove(entry.id);
+        dirty = true;
+    }
+
+    // -- PERSISTENCE -- //
+
+    /**
+     * Read the cache from the last run, then whatever the server itself remembers.
+     */
+    public static void load() {
+        if (FILE.exists()) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FILE)));
+                try {
+                    if (in.readInt() == VERSION) {
+                        int count = in.readInt();
+                        for (int i = 0; i < count; i++)
+                            put(in.readUTF(), new UUID(in.readLong(), in.readLong()), in.readLong());
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException oops) {
+                InfractionsPlugin.getInst().getLogger().warning("Unable to read \"" + FILE.getName() + "\": " + oops.getMessage());
+            }
+        }
+        loadServerCache();
+        dirty = false;
+    }
+
+    /**
+     * usercache.json is written by the server for every player who joined, with its own expiry.
+     */
+    private static void loadServerCache() {
+        if (!SERVER_CACHE.exists()) return;
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z");
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(SERVER_CACHE), Charsets.UTF_8);
+            try {
+                for (Object object : (JSONArray) new JSONParser().parse(reader)) {
+                    JSONObject profile = (JSONObject) object;
+                    try {
+                        long expires = Math.min(format.parse((String) profile.get("expiresOn")).getTime(), System.currentTimeMillis() + TTL);
+                        put((String) profile.get("name"), UUID.fromString((String) profile.get("uuid")), expires);
+                    } catch (ParseException ignored) {
+                    } catch (RuntimeException ignored) {
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (Exception oops) {
+            InfractionsPlugin.getInst().getLogger().warning("Unable to read \"" + SERVER_CACHE.getName() + "\": " + oops.getMessage());
+        }
+    }
+
+    /**
+     * Write the cache if it changed since the last save.
+     */
+    public static void save() {
+        if (!dirty) return;
+        List<Entry> entries;
+        synchronized (BY_NAME) {
+            entries = Lists.newArrayList(BY_NAME.values());
+            dirty = false;
+        }
+        try {
+            AtomicFile file = new AtomicFile(FILE);
+            try {
+                DataOutputStream out = new DataOutputStream(file.getStream());
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    out.writeUTF(entry.name);
+                    out.writeLong(entry.id.getMostSignificantBits());
+                    out.writeLong(entry.id.getLeastSignificantBits());
+                    out.writeLong(entry.expires);
+                }
+                out.flush();
+                file.commit();
+            } catch (IOException oops) {
+                file.abort();
+                throw oops;
+            }
+        } catch (IOException oops) {
+            dirty = true;
+            InfractionsPlugin.getInst().getLogger().warning("Unable to save \"" + FILE.getName() + "\": " + oops.getMessage());
+        }
+    }
+}
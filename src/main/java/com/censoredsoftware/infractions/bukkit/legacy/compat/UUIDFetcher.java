@@ -31,6 +31,12 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
 
     public Map<String, UUID> call() throws Exception {
         Map<String, UUID> uuidMap = new HashMap<String, UUID>();
+        List<String> names = new ArrayList<String>();
+        for (String name : this.names) {
+            UUID cached = NameCache.getId(name);
+            if (cached != null) uuidMap.put(name, cached);
+            else names.add(name);
+        }
         int requests = (int) Math.ceil(names.size() / PROFILES_PER_REQUEST);
         for (int i = 0; i < requests; i++) {
             HttpURLConnection connection = createConnection();
@@ -43,6 +49,7 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
                 String name = (String) jsonProfile.get("name");
                 UUID uuid = UUIDFetcher.getUUID(id);
                 uuidMap.put(name, uuid);
+                NameCache.put(name, uuid);
             }
             if (rateLimiting && i != requests - 1) {
                 Thread.sleep(100L);
@@ -62,6 +69,8 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
         URL url = new URL(PROFILE_URL);
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setRequestMethod("POST");
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
         connection.setRequestProperty("Content-Type", "application/json");
         connection.setUseCaches(false);
         connection.setDoInput(true);
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyCompleteDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
+import com.google.common.collect.Lists;
+import com.google.common.net.InetAddresses;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Inverted index from the addresses stored in dossiers to the dossiers that used them.
+ * <p/>
+ * Addresses are keyed by their raw bytes, an IPv4 address as an Integer and an IPv6 address as two longs, so
+ * nothing here ever asks the resolver. Older dossiers may hold host names instead, those are keyed by the name.
+ */
+public class AddressIndex {
+    // Address key -> dossier ids.
+    private static final ConcurrentMap<Object, Set<UUID>> ADDRESSES = new ConcurrentHashMap<Object, Set<UUID>>();
+    private static volatile boolean built = false;
+
+    /**
+     * Private constructor.
+     */
+    private AddressIndex() {
+    }
+
+    /**
+     * Record an address of a dossier.
+     *
+     * @param id      The dossier id.
+     * @param address The address as stored in the dossier.
+     */
+    public static void add(UUID id, String address) {
+        Object key = keyOf(address);
+        if (id == null || key == null) return;
+        while (true) {
+            Set<UUID> ids = ADDRESSES.get(key);
+            if (ids == null) {
+                Set<UUID> created = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>(2));
+                ids = ADDRESSES.putIfAbsent(key, created);
+                if (ids == null) ids = created;
+            }
+            ids.add(id);
+
+            // The set may have been dropped for being empty in the meantime.
+            if (ADDRESSES.get(key) == ids) return;
+        }
+    }
+
+    /**
+     * Forget an address of a dossier.
+     *
+     * @param id      The dossier id.
+     * @param address The address as stored in the dossier.
+     */
+    public static void remove(UUID id, String address) {
+        Object key = keyOf(address);
+        if (id != null && key != null) remove(id, key);
+    }
+
+    private static void remove(UUID id, Object key) {
+        Set<UUID> ids = ADDRESSES.get(key);
+        if (ids == null) return;
+        ids.remove(id);
+        if (ids.isEmpty()) ADDRESSES.remove(key, ids);
+    }
+
+    /**
+     * Find the complete dossiers that used an address.
+     *
+     * @param address The address.
+     * @return The matching dossiers.
+     */
+    public static List<LegacyCompleteDossier> find(InetAddress address) {
+        build();
+        List<LegacyCompleteDossier> dossiers = Lists.newArrayList();
+        for (Object key : keysOf(address)) {
+            Set<UUID> ids = ADDRESSES.get(key);
+            if (ids == null) continue;
+            for (UUID id : ids) {
+                LegacyDossier dossier = DataManager.getManager().getFor(LegacyDossier.class, id);
+                if (dossier instanceof LegacyCompleteDossier && contains((LegacyCompleteDossier) dossier, key)) {
+                    if (!dossiers.contains(dossier)) dossiers.add((LegacyCompleteDossier) dossier);
+                } else remove(id, key);
+            }
+        }
+        return dossiers;
+    }
+
+    /**
+     * @param stored  An address as stored in a dossier.
+     * @param address An address.
+     * @return They are the same address, compared by key.
+     */
+    public static boolean contains(String stored, InetAddress address) {
+        Object key = keyOf(stored);
+        return key != null && keysOf(address).contains(key);
+    }
+
+    private static boolean contains(LegacyCompleteDossier dossier, Object key) {
+        for (String stored : dossier.getRawAssociatedIPAddresses())
+            if (key.equals(keyOf(stored))) return true;
+        return false;
+    }
+
+    /**
+     * Index every dossier the first time the index is used, since stored dossiers aren't always decoded.
+     */
+    private static void build() {
+        if (built) return;
+        synchronized (ADDRESSES) {
+            if (built) return;
+            for (LegacyDossier dossier : DataManager.getManager().<UUID, LegacyDossier, LegacyDossier>getAllOf(LegacyDossier.class))
+                if (dossier instanceof LegacyCompleteDossier)
+                    for (String address : ((LegacyCompleteDossier) dossier).getRawAssociatedIPAddresses())
+                        add(dossier.getId(), address);
+            built = true;
+        }
+    }
+
+    // -- KEYS -- //
+
+    /**
+     * @param address An address as stored in a dossier, a literal or an old host name.
+     * @return The key, or null if there's nothing to index.
+     */
+    static Object keyOf(String address) {
+        if (address == null || address.isEmpty()) return null;
+        if (InetAddresses.isInetAddress(address)) return keyOf(InetAddresses.forString(address).getAddress());
+        return address.toLowerCase();
+    }
+
+    /**
+     * The keys an address can be stored under, its bytes and the host name it was created with if any.
+     */
+    static List<Object> keysOf(InetAddress address) {
+        List<Object> keys = Lists.newArrayListWithCapacity(2);
+        keys.add(keyOf(address.getAddress()));
+
+        // InetAddress.toString() is "host/literal" and never does a reverse lookup.
+        String text = address.toString();
+        int slash = text.indexOf('/');
+        if (slash > 0) keys.add(text.substring(0, slash).toLowerCase());
+        return keys;
+    }
+
+    private static Object keyOf(byte[] bytes) {
+        if (bytes.length == 4) return (int) bits(bytes, 0, 4);
+        return new V6(bits(bytes, 0, 8), bits(bytes, 8, 16));
+    }
+
+    private static long bits(byte[] bytes, int from, int to) {
+        long bits = 0;
+        for (int i = from; i < to; i++)
+            bits = (bits << 8) | (bytes[i] & 0xFF);
+        return bits;
+    }
+
+    /**
+     * An IPv6 address as two longs.
+     */
+    static final class V6 {
+        final long high, low;
+
+        V6(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof V6 && ((V6) other).high == high && ((V6) other).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = high ^ low;
+            return (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyCompleteDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Groups accounts that are connected through shared addresses, directly or through other accounts.
+ * <p/>
+ * A union-find over dossier ids and address keys, updated whenever a dossier gains or loses an address. Lookups
+ * never lock and halve the paths they walk. Links are made under one lock, and each set keeps its accounts on the
+ * root, so listing the relatives of an account doesn't walk the graph.
+ */
+public class AltGraph {
+    // Dossier ids and address keys -> their node.
+    private static final ConcurrentMap<Object, Node> NODES = new ConcurrentHashMap<Object, Node>();
+    private static final Object LOCK = new Object();
+    private static volatile boolean built = false;
+
+    private static final AtomicReferenceFieldUpdater<Node, Node> PARENT = AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "parent");
+
+    private static final class Node {
+        // Null on a root.
+        volatile Node parent;
+
+        // Only used on roots, guarded by the lock.
+        int rank;
+
+        // The accounts in the set, only kept on roots that have any.
+        volatile Set<UUID> accounts;
+    }
+
+    /**
+     * Private constructor.
+     */
+    private AltGraph() {
+    }
+
+    /**
+     * Link a dossier to an address it used.
+     *
+     * @param id      The dossier id.
+     * @param address The address as stored in the dossier.
+     */
+    public static void add(UUID id, String address) {
+        Object key = AddressIndex.keyOf(address);
+        if (id == null || key == null) return;
+        synchronized (LOCK) {
+            union(node(id, true), node(key, false));
+        }
+    }
+
+    /**
+     * Unlink a dossier from an address it no longer uses.
+     * <p/>
+     * A union-find can't split a set, so the set the dossier was in is relinked from what its accounts store now.
+     *
+     * @param id      The dossier id.
+     * @param address The address as stored in the dossier.
+     */
+    public static void remove(UUID id, String address) {
+        Object key = AddressIndex.keyOf(address);
+        if (id == null || key == null) return;
+        synchronized (LOCK) {
+            Node node = NODES.get(id);
+            if (node == null) return;
+            Set<UUID> accounts = find(node).accounts;
+
+            // Fresh nodes, so lookups still walking the old ones can't mix them into the new sets.
+            NODES.remove(key);
+            for (UUID account : accounts) {
+                LegacyDossier dossier = DataManager.getManager().getFor(LegacyDossier.class, account);
+                NODES.remove(account);
+                if (!(dossier instanceof LegacyCompleteDossier)) continue;
+                for (String stored : ((LegacyCompleteDossier) dossier).getRawAssociatedIPAddresses()) {
+                    Object other = AddressIndex.keyOf(stored);
+                    if (other != null) NODES.remove(other);
+                }
+            }
+            for (UUID account : accounts) {
+                LegacyDossier dossier = DataManager.getManager().getFor(LegacyDossier.class, account);
+                if (!(dossier instanceof LegacyCompleteDossier)) continue;
+                Node accountNode = node(account, true);
+                for (String stored : ((LegacyCompleteDossier) dossier).getRawAssociatedIPAddresses()) {
+                    Object other = AddressIndex.keyOf(stored);
+                    if (other != null) union(accountNode, node(other, false));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param id A dossier id.
+     * @return The dossier ids connected to it, not including itself.
+     */
+    public static Set<UUID> getRelatedIds(UUID id) {
+        build();
+        Node node = id == null ? null : NODES.get(id);
+        if (node == null) return Collections.emptySet();
+
+        // A root can stop being one between the walk and the read, then walk again.
+        Set<UUID> accounts = find(node).accounts;
+        while (accounts == null)
+            accounts = find(node).accounts;
+        Set<UUID> related = Sets.newHashSet(accounts);
+        related.remove(id);
+        return related;
+    }
+
+    /**
+     * @param id A dossier id.
+     * @return The last known names of the accounts connected to it.
+     */
+    public static List<String> getRelatives(UUID id) {
+        List<String> names = Lists.newArrayList();
+        for (UUID other : getRelatedIds(id)) {
+            LegacyDossier dossier = DataManager.getManager().getFor(LegacyDossier.class, other);
+            if (dossier instanceof LegacyCompleteDossier)
+                names.add(((LegacyCompleteDossier) dossier).getLastKnownName());
+        }
+        Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    /**
+     * @param id    A dossier id.
+     * @param other Another dossier id.
+     * @return The accounts are connected.
+     */
+    public static boolean related(UUID id, UUID other) {
+        build();
+        Node node = NODES.get(id), otherNode = NODES.get(other);
+        return node != null && otherNode != null && find(node) == find(otherNode);
+    }
+
+    /**
+     * Link every stored dossier the first time the graph is used, later changes keep it current.
+     */
+    private static void build() {
+        if (built) return;
+        synchronized (LOCK) {
+            if (built) return;
+            for (LegacyDossier dossier : DataManager.getManager().<UUID, LegacyDossier, LegacyDossier>getAllOf(LegacyDossier.class))
+                if (dossier instanceof LegacyCompleteDossier)
+                    for (String address : ((LegacyCompleteDossier) dossier).getRawAssociatedIPAddresses())
+                        add(dossier.getId(), address);
+            built = true;
+        }
+    }
+
+    // -- UNION-FIND -- //
+
+    private static Node node(Object key, boolean account) {
+        Node node = NODES.get(key);
+        if (node != null) return node;
+        node = new Node();
+        if (account) {
+            node.accounts = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>(2));
+            node.accounts.add((UUID) key);
+        }
+        NODES.put(key, node);
+        return node;
+    }
+
+    private static Node find(Node node) {
+        Node parent;
+        while ((parent = node.parent) != null) {
+            Node grand = parent.parent;
+            if (grand == null) return parent;
+            PARENT.compareAndSet(node, parent, grand);
+            node = grand;
+        }
+        return node;
+    }
+
+    private static void union(Node node, Node other) {
+        Node root = find(node), otherRoot = find(other);
+        if (root == otherRoot) return;
+        if (root.rank < otherRoot.rank) {
+            Node swap = root;
+            root = otherRoot;
+            otherRoot = swap;
+        }
+
+        // The smaller set of accounts moves into the larger, before the other root stops being one.
+        Set<UUID> accounts = root.accounts, others = otherRoot.accounts;
+        if (accounts == null || (others != null && others.size() > accounts.size())) {
+            Set<UUID> swap = accounts;
+            accounts = others;
+            others = swap;
+        }
+        if (others != null) accounts.addAll(others);
+        root.accounts = accounts;
+        if (root.rank == otherRoot.rank) root.rank++;
+        otherRoot.parent = root;
+        otherRoot.accounts = null;
+    }
+}
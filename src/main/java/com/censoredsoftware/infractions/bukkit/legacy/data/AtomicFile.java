@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.google.common.io.CountingOutputStream;
+
+import java.io.*;
+
+/**
+ * Writes a file next to the old one and only swaps it in once it is complete and synced to disk, so a crash
+ * leaves either the old file or the new one, never a truncated one.
+ */
+public class AtomicFile {
+    private final File file, temp;
+    private final FileOutputStream fileOut;
+    private final CountingOutputStream counter;
+    private final OutputStream out;
+    private final long start = System.nanoTime();
+    private boolean done;
+
+    /**
+     * @param file The file to replace.
+     * @throws IOException If the temporary file can't be created.
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public AtomicFile(File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        this.file = file;
+        this.temp = new File(file.getPath() + ".tmp");
+        fileOut = new FileOutputStream(temp);
+        counter = new CountingOutputStream(fileOut);
+        out = new BufferedOutputStream(counter);
+    }
+
+    /**
+     * @return The stream to write the new contents to. Anything wrapping it has to be flushed before committing.
+     */
+    public OutputStream getStream() {
+        return out;
+    }
+
+    /**
+     * Sync the new file to disk and move it over the old one.
+     *
+     * @throws IOException If the file can't be written or replaced, the old file is left as it was.
+     */
+    public void commit() throws IOException {
+        if (done) throw new IOException("\"" + file.getName() + "\" was already written.");
+        done = true;
+        try {
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException oops) {
+            abortQuietly();
+            throw oops;
+        }
+        out.close();
+
+        // Atomic where the platform allows replacing a file by renaming, which is everywhere but Windows.
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+            throw new IOException("Unable to replace \"" + file.getName() + "\".");
+        WriteStats.record(file.getName(), counter.getCount(), System.nanoTime() - start);
+    }
+
+    /**
+     * Throw away the new contents, leaving the old file as it was.
+     */
+    public void abort() {
+        if (done) return;
+        done = true;
+        abortQuietly();
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void abortQuietly() {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        temp.delete();
+    }
+}
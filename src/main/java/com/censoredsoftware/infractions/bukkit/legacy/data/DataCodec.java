@@ -16,13 +16,27 @@
 
 package com.censoredsoftware.infractions.bukkit.legacy.data;
 
-import java.lang.annotation.ElementType;
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-import java.lang.annotation.Target;
+import org.bukkit.configuration.ConfigurationSection;
 
-@Target(ElementType.METHOD)
-@Retention(RetentionPolicy.RUNTIME)
-public @interface DataProvider {
-    IdType idType();
+import java.util.Map;
+
+/**
+ * Turns records of one data type into their serialized form and back.
+ *
+ * @param <K> The id type.
+ * @param <V> The data type.
+ */
+public interface DataCodec<K, V extends DataSerializable<K>> {
+    /**
+     * @param id   The record id.
+     * @param conf The serialized record.
+     * @return The record, or null if it is corrupt.
+     */
+    V decode(K id, ConfigurationSection conf);
+
+    /**
+     * @param value The record.
+     * @return The serialized record.
+     */
+    Map<String, Object> encode(V value);
 }
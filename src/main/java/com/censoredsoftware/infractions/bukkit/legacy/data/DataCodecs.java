@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyInfraction;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyIssuer;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * The codec of every data class, registered once up front.
+ */
+@SuppressWarnings("unchecked")
+public class DataCodecs {
+    private static final Map<Class, DataCodec> CODECS = Maps.newHashMap();
+
+    static {
+        register(LegacyIssuer.class, LegacyIssuer.CODEC);
+        register(LegacyInfraction.class, LegacyInfraction.CODEC);
+        register(LegacyDossier.class, LegacyDossier.CODEC);
+        register(ServerData.class, ServerData.CODEC);
+    }
+
+    /**
+     * Private constructor.
+     */
+    private DataCodecs() {
+    }
+
+    private static <K, V extends DataSerializable<K>> void register(Class<V> dataClass, DataCodec<K, V> codec) {
+        CODECS.put(dataClass, codec);
+    }
+
+    /**
+     * @param dataClass The data class.
+     * @return The codec of the data class, or null if it has none.
+     */
+    public static <K, V extends DataSerializable<K>> DataCodec<K, V> get(Class<V> dataClass) {
+        return CODECS.get(dataClass);
+    }
+}
@@ -17,13 +17,25 @@
 package com.censoredsoftware.infractions.bukkit.legacy.data;
 
 import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.data.file.BinaryFileDataManager;
 import com.censoredsoftware.infractions.bukkit.legacy.data.file.FileDataManager;
+import com.censoredsoftware.infractions.bukkit.legacy.data.journal.JournalDataManager;
+import com.censoredsoftware.infractions.bukkit.legacy.data.sql.SqlDataManager;
+import com.google.common.collect.Lists;
 
+import java.net.InetAddress;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentMap;
 
 public abstract class DataManager {
     static final DataManager DATA_MANAGER = findManager();
+    static final DataWriter DATA_WRITER = new DataWriter(new Runnable() {
+        @Override
+        public void run() {
+            DATA_MANAGER.save();
+        }
+    });
 
     private static DataManager findManager() {
         // Get the correct data manager.
@@ -32,6 +44,18 @@ public abstract class DataManager {
             InfractionsPlugin.getInst().getLogger().info("Enabling file save method.");
             return trainManager(FileDataManager.class);
         }
+        if ("binary".equals(saveMethod.toLowerCase())) {
+            InfractionsPlugin.getInst().getLogger().info("Enabling binary file save method.");
+            return trainManager(BinaryFileDataManager.class);
+        }
+        if ("journal".equals(saveMethod.toLowerCase())) {
+            InfractionsPlugin.getInst().getLogger().info("Enabling journal save method.");
+            return trainManager(JournalDataManager.class);
+        }
+        if ("sql".equals(saveMethod.toLowerCase())) {
+            InfractionsPlugin.getInst().getLogger().info("Enabling SQL save method.");
+            return trainManager(SqlDataManager.class);
+        }
         InfractionsPlugin.getInst().getLogger().severe("\"" + saveMethod + "\" is not a valid save method.");
         InfractionsPlugin.getInst().getLogger().severe("Defaulting to file save method.");
         return trainManager(FileDataManager.class);
@@ -52,12 +76,80 @@ public abstract class DataManager {
 
     protected abstract void flushData();
 
+    /**
+     * Release anything the data manager holds open. Called once, after the final save.
+     */
+    protected void close() {
+    }
+
     public abstract <K, V extends DataSerializable<K>, I> I getFor(final Class<V> clazz, final K key);
 
     public abstract <K, V extends DataSerializable<K>, I> Collection<I> getAllOf(final Class<V> clazz);
 
     public abstract <K, V extends DataSerializable<K>, I> ConcurrentMap<K, I> getMapFor(final Class<V> clazz);
 
+    /**
+     * Like {@link #getAllOf(Class)}, but only the records already in memory, so nothing stored gets decoded.
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V extends DataSerializable<K>, I> Collection<I> getResidentOf(final Class<V> clazz) {
+        ConcurrentMap<K, I> map = getMapFor(clazz);
+        return map instanceof TrackedDataMap ? ((TrackedDataMap<K, I>) map).residentValues() : this.<K, V, I>getAllOf(clazz);
+    }
+
+    /**
+     * Flag a record that was changed in place, so the next save persists it.
+     *
+     * @param clazz The data class.
+     * @param key   The id of the changed record.
+     */
+    public abstract <K, V extends DataSerializable<K>> void markDirty(final Class<V> clazz, final K key);
+
+    // -- QUERIES -- //
+
+    /**
+     * Find the server data in a row, optionally limited to one column.
+     *
+     * @param row    The row.
+     * @param column The column, or null for the whole row.
+     * @return The matching server data.
+     */
+    public Collection<ServerData> findServerData(String row, String column) {
+        if (column == null) return ServerDataIndex.row(row);
+        ServerData data = ServerDataIndex.get(row, column);
+        return data == null ? Lists.<ServerData>newArrayList() : Lists.newArrayList(data);
+    }
+
+    /**
+     * Find the complete dossiers associated with an address.
+     *
+     * @param address The address.
+     * @return The matching dossiers.
+     */
+    public Collection<LegacyDossier> findDossiersByAddress(InetAddress address) {
+        return Lists.<LegacyDossier>newArrayList(AddressIndex.find(address));
+    }
+
+    /**
+     * Find the complete dossiers with a last known name starting with a prefix, ignoring case.
+     *
+     * @param prefix The name prefix.
+     * @return The matching dossiers, an exact match first, then the most recently seen.
+     */
+    public Collection<LegacyDossier> findDossiersByName(String prefix) {
+        return Lists.<LegacyDossier>newArrayList(NameIndex.find(prefix));
+    }
+
+    /**
+     * Find the best match for a name, without looking up every dossier that matches.
+     *
+     * @param prefix The name prefix.
+     * @return The exact match, else the most recently seen dossier with a name starting with the prefix, or null.
+     */
+    public LegacyDossier findDossierByName(String prefix) {
+        return NameIndex.first(prefix);
+    }
+
     public static DataManager getManager() {
         return DATA_MANAGER;
     }
@@ -66,11 +158,26 @@ public abstract class DataManager {
         DATA_MANAGER.init();
     }
 
+    /**
+     * Save everything that changed, and wait for it.
+     */
     public static void saveAllData() {
-        DATA_MANAGER.save();
+        DATA_WRITER.flush();
+    }
+
+    /**
+     * Save everything that changed in the background, unless a save is already waiting.
+     */
+    public static void requestSave() {
+        DATA_WRITER.request();
     }
 
     public static void flushAllData() {
         DATA_MANAGER.flushData();
     }
+
+    public static void closeAllData() {
+        DATA_WRITER.shutdown();
+        DATA_MANAGER.close();
+    }
 }
@@ -20,6 +20,10 @@ import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
 import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyInfraction;
 import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyIssuer;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Meta data for each data type.
  */
@@ -32,7 +36,7 @@ public enum DataType {
     /**
      * Infraction.
      */
-    INFRACTION(LegacyInfraction.class, IdType.STRING, "inf"),
+    INFRACTION(LegacyInfraction.class, IdType.INFRACTION_ID, "inf", ISSUER),
     /**
      * Dossier.
      */
@@ -49,18 +53,21 @@ public enum DataType {
     private Class clazz;
     private IdType idType;
     private String abbr;
+    private List<DataType> dependencies;
 
     /**
      * Meta data for a data type.
      *
-     * @param clazz  The object class that holds the data.
-     * @param idType The id type this data type uses.
-     * @param abbr   The abbreviation for use in certain data managers.
+     * @param clazz        The object class that holds the data.
+     * @param idType       The id type this data type uses.
+     * @param abbr         The abbreviation for use in certain data managers.
+     * @param dependencies The data types that must be loaded before this one can be decoded.
      */
-    private <V extends DataSerializable<?>> DataType(Class<V> clazz, IdType idType, String abbr) {
+    private <V extends DataSerializable<?>> DataType(Class<V> clazz, IdType idType, String abbr, DataType... dependencies) {
         this.clazz = clazz;
         this.idType = idType;
         this.abbr = abbr;
+        this.dependencies = Collections.unmodifiableList(Arrays.asList(dependencies));
     }
 
     @Override
@@ -79,4 +86,8 @@ public enum DataType {
     public String getAbbreviation() {
         return abbr;
     }
+
+    public List<DataType> getDependencies() {
+        return dependencies;
+    }
 }
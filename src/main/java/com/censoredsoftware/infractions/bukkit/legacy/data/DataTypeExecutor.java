@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs a task for each data type on a bounded worker pool, ordered by the explicit dependencies between data types.
+ * <p/>
+ * Loading a type waits for the types it depends on, since decoding it looks them up. Saving a type waits for the
+ * types that depend on it instead, since serializing those can add records to it.
+ */
+public class DataTypeExecutor {
+    private static final ImmutableList<DataType> LOAD_ORDER = sort();
+    private static final List<DataType> SAVE_ORDER = LOAD_ORDER.reverse();
+
+    private final ExecutorService pool;
+
+    public DataTypeExecutor(final String name) {
+        int threads = Math.max(1, Math.min(DataType.values().length, Runtime.getRuntime().availableProcessors()));
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * A task to run for a single data type.
+     */
+    public interface Task {
+        void run(DataType type) throws Exception;
+    }
+
+    /**
+     * Run a load task for each of the given types, and wait for all of them.
+     *
+     * @param types The data types.
+     * @param task  The task.
+     */
+    public void load(Collection<DataType> types, Task task) {
+        run(types, task, false);
+    }
+
+    /**
+     * Run a save task for each of the given types, and wait for all of them.
+     *
+     * @param types The data types.
+     * @param task  The task.
+     */
+    public void save(Collection<DataType> types, Task task) {
+        run(types, task, true);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private void run(Collection<DataType> types, final Task task, boolean save) {
+        // Tasks are submitted in dependency order to a FIFO pool, so anything a task waits on was taken by a worker
+        // before it, and the pool can't fill up with waiting tasks.
+        Map<DataType, Future<?>> futures = Maps.newEnumMap(DataType.class);
+        for (final DataType type : save ? SAVE_ORDER : LOAD_ORDER) {
+            if (!types.contains(type)) continue;
+            final List<Future<?>> waitFor = Lists.newArrayList();
+            for (DataType other : save ? dependents(type) : type.getDependencies())
+                if (futures.containsKey(other)) waitFor.add(futures.get(other));
+            futures.put(type, pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (Future<?> future : waitFor)
+                        await(future);
+                    task.run(type);
+                    return null;
+                }
+            }));
+        }
+
+        for (Map.Entry<DataType, Future<?>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException errored) {
+                InfractionsPlugin.getInst().getLogger().severe("Data task for \"" + entry.getKey().name() + "\" failed: " + errored.getCause());
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wait for a task that another depends on. Its failure is reported by whoever started it.
+     */
+    private static void await(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    // -- ORDER -- //
+
+    /**
+     * @return Every data type, each after the types it depends on.
+     */
+    public static List<DataType> loadOrder() {
+        return LOAD_ORDER;
+    }
+
+    /**
+     * @return Every data type, each after the types that depend on it.
+     */
+    public static List<DataType> saveOrder() {
+        return SAVE_ORDER;
+    }
+
+    private static List<DataType> dependents(DataType type) {
+        List<DataType> dependents = Lists.newArrayList();
+        for (DataType other : DataType.values())
+            if (other.getDependencies().contains(type)) dependents.add(other);
+        return dependents;
+    }
+
+    private static ImmutableList<DataType> sort() {
+        List<DataType> sorted = Lists.newArrayList();
+        Set<DataType> remaining = EnumSet.allOf(DataType.class);
+        while (!remaining.isEmpty()) {
+            boolean progress = false;
+            for (Iterator<DataType> it = remaining.iterator(); it.hasNext(); ) {
+                DataType type = it.next();
+                if (!sorted.containsAll(type.getDependencies())) continue;
+                sorted.add(type);
+                it.remove();
+                progress = true;
+            }
+            if (!progress) throw new IllegalStateException("Data types have a dependency cycle: " + remaining);
+        }
+        return ImmutableList.copyOf(sorted);
+    }
+}
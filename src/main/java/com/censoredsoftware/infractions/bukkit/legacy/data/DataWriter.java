@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The one thread that saves data. A save requested while another is still waiting is merged into it, so a slow
+ * disk never stacks up saves.
+ */
+public class DataWriter {
+    // Writes slower than this are always reported.
+    private static final long SLOW_MILLIS = 1000;
+
+    private final Runnable save;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Infractions Writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * @param save Saves everything that changed.
+     */
+    public DataWriter(Runnable save) {
+        this.save = save;
+    }
+
+    /**
+     * Ask for a save, unless one is already waiting to start.
+     */
+    public void request() {
+        if (!pending.compareAndSet(false, true)) return;
+        try {
+            thread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pending.set(false);
+                    runSave();
+                }
+            });
+        } catch (RejectedExecutionException shutDown) {
+            pending.set(false);
+        }
+    }
+
+    /**
+     * Save, after any save that is already running, and wait for it to finish.
+     */
+    public void flush() {
+        Future<?> done;
+        try {
+            done = thread.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runSave();
+                }
+            });
+        } catch (RejectedExecutionException shutDown) {
+            return;
+        }
+        try {
+            done.get();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // Already logged by the save itself.
+        }
+    }
+
+    /**
+     * Stop taking requests, and wait for the save in progress.
+     */
+    public void shutdown() {
+        thread.shutdown();
+        try {
+            if (!thread.awaitTermination(1, TimeUnit.MINUTES))
+                InfractionsPlugin.getInst().getLogger().severe("Gave up waiting for data to finish saving.");
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSave() {
+        Logger log = InfractionsPlugin.getInst().getLogger();
+        try {
+            save.run();
+        } catch (Exception errored) {
+            log.log(Level.SEVERE, "Unable to save data.", errored);
+        }
+
+        // Report what was written.
+        for (Map.Entry<String, WriteStats> entry : WriteStats.drainRecent().entrySet()) {
+            WriteStats stats = entry.getValue();
+            if (stats.getMaxMillis() >= SLOW_MILLIS)
+                log.warning("Writing \"" + entry.getKey() + "\" is slow: " + stats + ".");
+            else log.fine("Wrote \"" + entry.getKey() + "\": " + stats + ".");
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.censoredsoftware.infractions.bukkit.legacy.data;
 
+import com.censoredsoftware.infractions.bukkit.legacy.compat.InfractionId;
 import com.google.common.base.Function;
 
 import javax.annotation.Nullable;
@@ -39,6 +40,15 @@ public enum IdType {
             return java.util.UUID.fromString(s);
         }
     }, java.util.UUID.class),
+    /**
+     * Infraction id, stored in its letter form.
+     */
+    INFRACTION_ID(new Function<String, InfractionId>() {
+        @Override
+        public InfractionId apply(@Nullable String s) {
+            return InfractionId.parse(s);
+        }
+    }, InfractionId.class),
     /**
      * Void (invalid).
      */
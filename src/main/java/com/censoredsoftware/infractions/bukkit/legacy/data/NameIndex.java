@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyCompleteDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.*;
+
+/**
+ * Case-insensitive index of the last known names of dossiers.
+ * <p/>
+ * Entries are added whenever a complete dossier is created or renamed, and checked against the dossier when they
+ * are read, so removed dossiers and old names drop out on their own.
+ */
+public class NameIndex {
+    // Lower case name -> dossier ids -> when they were last seen (0 if unknown), guarded by itself.
+    private static final NavigableMap<String, Map<UUID, Long>> NAMES = new TreeMap<String, Map<UUID, Long>>();
+    private static final Object BUILD_LOCK = new Object();
+    private static volatile boolean built = false;
+
+    /**
+     * Private constructor.
+     */
+    private NameIndex() {
+    }
+
+    /**
+     * Record the current name of a dossier.
+     *
+     * @param id   The dossier id.
+     * @param name The last known name.
+     */
+    public static void add(UUID id, String name) {
+        add(id, name, null);
+    }
+
+    /**
+     * Record the current name of a dossier, and when it was last seen with it.
+     *
+     * @param id       The dossier id.
+     * @param name     The last known name.
+     * @param lastSeen When the player last logged in, or null if unknown.
+     */
+    public static void add(UUID id, String name, Long lastSeen) {
+        if (id == null || name == null) return;
+        String key = name.toLowerCase();
+        long seen = lastSeen != null ? lastSeen : 0;
+        synchronized (NAMES) {
+            if (!NAMES.containsKey(key)) NAMES.put(key, new HashMap<UUID, Long>(2));
+            Long known = NAMES.get(key).get(id);
+            NAMES.get(key).put(id, known != null ? Math.max(known, seen) : seen);
+        }
+    }
+
+    /**
+     * Find the dossiers with a last known name starting with a prefix, ignoring case.
+     *
+     * @param prefix The name prefix.
+     * @return The dossiers, an exact match first, then the most recently seen.
+     */
+    public static List<LegacyCompleteDossier> find(String prefix) {
+        final String key = prefix.toLowerCase();
+        Map<UUID, String> found = Maps.newHashMap();
+        synchronized (index()) {
+            for (Map.Entry<String, Map<UUID, Long>> entry : NAMES.subMap(key, true, key + Character.MAX_VALUE, false).entrySet())
+                for (UUID id : entry.getValue().keySet())
+                    found.put(id, entry.getKey());
+        }
+
+        List<LegacyCompleteDossier> dossiers = resolve(found);
+        Collections.sort(dossiers, new Comparator<LegacyCompleteDossier>() {
+            @Override
+            public int compare(LegacyCompleteDossier a, LegacyCompleteDossier b) {
+                boolean exactA = key.equals(a.getLastKnownName().toLowerCase());
+                boolean exactB = key.equals(b.getLastKnownName().toLowerCase());
+                if (exactA != exactB) return exactA ? -1 : 1;
+                return RECENT_FIRST.compare(a, b);
+            }
+        });
+        return dossiers;
+    }
+
+    /**
+     * Find the best match for a name, ranked the same way as {@link #find(String)}. Only the best ranked entry is
+     * looked up, instead of every dossier with a matching name.
+     *
+     * @param prefix The name prefix.
+     * @return The exact match, else the most recently seen name starting with the prefix, or null if there is none.
+     */
+    public static LegacyCompleteDossier first(String prefix) {
+        String key = prefix.toLowerCase();
+        while (true) {
+            UUID best = null;
+            String bestKey = null;
+            long bestSeen = -1;
+            synchronized (index()) {
+                SortedMap<String, Map<UUID, Long>> matches = NAMES.containsKey(key) ? NAMES.subMap(key, true, key, true) : NAMES.subMap(key, true, key + Character.MAX_VALUE, false);
+                for (Map.Entry<String, Map<UUID, Long>> entry : matches.entrySet()) {
+                    for (Map.Entry<UUID, Long> id : entry.getValue().entrySet()) {
+                        if (id.getValue() <= bestSeen) continue;
+                        best = id.getKey();
+                        bestKey = entry.getKey();
+                        bestSeen = id.getValue();
+                    }
+                }
+            }
+            if (best == null) return null;
+
+            // Out of date entries are dropped by the lookup, so the next best one gets its turn.
+            List<LegacyCompleteDossier> resolved = resolve(Collections.singletonMap(best, bestKey));
+            if (!resolved.isEmpty()) return resolved.get(0);
+        }
+    }
+
+    /**
+     * Suggest names close to one that wasn't found.
+     *
+     * @param guess The name that wasn't found.
+     * @param max   The most suggestions to return.
+     * @return The closest names, most recently seen first among equally close ones.
+     */
+    public static List<String> suggest(String guess, int max) {
+        String key = guess.toLowerCase();
+        int limit = key.length() <= 4 ? 1 : 2;
+        final Map<UUID, Integer> distances = Maps.newHashMap();
+        Map<UUID, String> found = Maps.newHashMap();
+        synchronized (index()) {
+            for (Map.Entry<String, Map<UUID, Long>> entry : NAMES.entrySet()) {
+                int distance = distance(key, entry.getKey(), limit);
+                if (distance > limit) continue;
+                for (UUID id : entry.getValue().keySet()) {
+                    distances.put(id, distance);
+                    found.put(id, entry.getKey());
+                }
+            }
+        }
+
+        List<LegacyCompleteDossier> dossiers = resolve(found);
+        Collections.sort(dossiers, new Comparator<LegacyCompleteDossier>() {
+            @Override
+            public int compare(LegacyCompleteDossier a, LegacyCompleteDossier b) {
+                int compare = distances.get(a.getId()).compareTo(distances.get(b.getId()));
+                return compare != 0 ? compare : RECENT_FIRST.compare(a, b);
+            }
+        });
+        Set<String> names = new LinkedHashSet<String>();
+        for (LegacyCompleteDossier dossier : dossiers)
+            if (names.size() < max) names.add(dossier.getLastKnownName());
+        return Lists.newArrayList(names);
+    }
+
+    private static final Comparator<LegacyCompleteDossier> RECENT_FIRST = new Comparator<LegacyCompleteDossier>() {
+        @Override
+        public int compare(LegacyCompleteDossier a, LegacyCompleteDossier b) {
+            long seenA = a.getLastSeen() != null ? a.getLastSeen() : 0, seenB = b.getLastSeen() != null ? b.getLastSeen() : 0;
+            if (seenA != seenB) return seenA > seenB ? -1 : 1;
+            int compare = a.getLastKnownName().compareToIgnoreCase(b.getLastKnownName());
+            return compare != 0 ? compare : a.getId().compareTo(b.getId());
+        }
+    };
+
+    /**
+     * Look up the indexed dossiers, dropping entries that are out of date.
+     */
+    private static List<LegacyCompleteDossier> resolve(Map<UUID, String> found) {
+        List<LegacyCompleteDossier> dossiers = Lists.newArrayList();
+        for (Map.Entry<UUID, String> entry : found.entrySet()) {
+            LegacyDossier dossier = DataManager.getManager().getFor(LegacyDossier.class, entry.getKey());
+            if (dossier instanceof LegacyCompleteDossier && dossier.complete().getLastKnownName() != null && entry.getValue().equals(dossier.complete().getLastKnownName().toLowerCase()))
+                dossiers.add((LegacyCompleteDossier) dossier);
+            else remove(entry.getKey(), entry.getValue());
+        }
+        return dossiers;
+    }
+
+    private static void remove(UUID id, String key) {
+        synchronized (NAMES) {
+            Map<UUID, Long> ids = NAMES.get(key);
+            if (ids == null) return;
+            ids.remove(id);
+            if (ids.isEmpty()) NAMES.remove(key);
+        }
+    }
+
+    /**
+     * Index every dossier in the background, after the data is loaded. Stored dossiers aren't always decoded, so
+     * this keeps the decoding off the enable and login threads.
+     */
+    public static void buildAsync() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                build();
+            }
+        }, "Infractions Name Index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Index every dossier, unless that already happened. Lookups that come before the background build wait for it.
+     */
+    private static void build() {
+        if (built) return;
+        synchronized (BUILD_LOCK) {
+            if (built) return;
+            Set<UUID> seen = Sets.newHashSet();
+            for (LegacyDossier dossier : DataManager.getManager().<UUID, LegacyDossier, LegacyDossier>getAllOf(LegacyDossier.class))
+                if (dossier instanceof LegacyCompleteDossier && seen.add(dossier.getId()))
+                    add(dossier.getId(), dossier.complete().getLastKnownName(), ((LegacyCompleteDossier) dossier).getLastSeen());
+            built = true;
+        }
+    }
+
+    /**
+     * @return The index lock, once the index is built.
+     */
+    private static Object index() {
+        build();
+        return NAMES;
+    }
+
+    /**
+     * Levenshtein distance, giving up once it is over a limit.
+     *
+     * @return The distance, or anything over the limit.
+     */
+    static int distance(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) return limit + 1;
+        int[] previous = new int[b.length() + 1], current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int best = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                best = Math.min(best, current[j]);
+            }
+            if (best > limit) return limit + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -17,8 +17,6 @@
 package com.censoredsoftware.infractions.bukkit.legacy.data;
 
 import com.google.common.base.Objects;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.Sets;
 import org.bukkit.configuration.ConfigurationSection;
 
@@ -36,7 +34,18 @@ public class ServerData implements DataSerializable<UUID> {
     private ServerData() {
     }
 
-    @DataProvider(idType = IdType.UUID)
+    public static final DataCodec<UUID, ServerData> CODEC = new DataCodec<UUID, ServerData>() {
+        @Override
+        public ServerData decode(UUID id, ConfigurationSection conf) {
+            return of(id, conf);
+        }
+
+        @Override
+        public Map<String, Object> encode(ServerData value) {
+            return value.serialize();
+        }
+    };
+
     public static ServerData of(UUID id, ConfigurationSection conf) {
         ServerData data = new ServerData();
         data.id = id;
@@ -110,6 +119,13 @@ public class ServerData implements DataSerializable<UUID> {
         return expiration;
     }
 
+    /**
+     * @return This is a timed value that ran out.
+     */
+    public boolean isExpired() {
+        return ServerDataType.TIMED.equals(type) && expiration != null && expiration <= System.currentTimeMillis();
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (this == obj) return true;
@@ -133,11 +149,14 @@ public class ServerData implements DataSerializable<UUID> {
     }
 
     private void save() {
+        ServerData old = ServerDataIndex.add(this);
+        if (old != null && old != this) old.remove();
         DataManager.getManager().getMapFor(ServerData.class).put(getId(), this);
     }
 
-    private void remove() {
+    void remove() {
         DataManager.getManager().getMapFor(ServerData.class).remove(getId());
+        ServerDataIndex.remove(this);
     }
 
     /*
@@ -176,7 +195,7 @@ public class ServerData implements DataSerializable<UUID> {
     }
 
     public static boolean exists(String row, String column) {
-        return find(row, column) != null;
+        return ServerDataIndex.get(row, column) != null;
     }
 
     public static Object get(String row, String column) {
@@ -188,37 +207,24 @@ public class ServerData implements DataSerializable<UUID> {
     }
 
     public static ServerData find(String row, String column) {
-        if (findByRow(row) == null) return null;
-
-        for (ServerData data : findByRow(row))
-            if (data.getColumn().equals(column)) return data;
-
-        return null;
+        return ServerDataIndex.get(row, column);
     }
 
     public static Set<ServerData> findByRow(final String row) {
-        return Sets.newHashSet(Collections2.filter(all(), new Predicate<ServerData>() {
-            @Override
-            public boolean apply(ServerData serverData) {
-                return serverData.getRow().equals(row);
-            }
-        }));
+        return Sets.newHashSet(ServerDataIndex.row(row));
     }
 
     public static void remove(String row, String column) {
-        if (find(row, column) != null) find(row, column).remove();
+        ServerData data = find(row, column);
+        if (data != null) data.remove();
     }
 
     /**
-     * Clears all expired timed value.
+     * Clears all expired timed values.
+     *
+     * @return The number of values cleared.
      */
-    public static void clearExpired() {
-        for (ServerData data : Collections2.filter(all(), new Predicate<ServerData>() {
-            @Override
-            public boolean apply(ServerData data) {
-                return ServerDataType.TIMED.equals(data.getType()) && data.getExpiration() <= System.currentTimeMillis();
-            }
-        }))
-            data.remove();
+    public static int clearExpired() {
+        return ServerDataIndex.expire(System.currentTimeMillis());
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.google.common.collect.Lists;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Row -> column index of the stored server data, and the deadlines of the timed entries.
+ * <p/>
+ * Built from the stored data the first time it is used, then kept in step by {@link ServerData} whenever it saves
+ * or removes an entry. Entries are checked against the stored data when read, so records removed some other way
+ * drop out on their own. Expired entries read as absent until they are evicted.
+ */
+class ServerDataIndex {
+    private static final ConcurrentMap<String, ConcurrentMap<String, ServerData>> ROWS = new ConcurrentHashMap<String, ConcurrentMap<String, ServerData>>();
+
+    // Timed entries, soonest deadline first, guarded by itself. Entries replaced in the meantime are skipped.
+    private static final PriorityQueue<ServerData> DEADLINES = new PriorityQueue<ServerData>(16, new Comparator<ServerData>() {
+        @Override
+        public int compare(ServerData a, ServerData b) {
+            return a.getExpiration().compareTo(b.getExpiration());
+        }
+    });
+    private static volatile boolean built = false;
+
+    /**
+     * Private constructor.
+     */
+    private ServerDataIndex() {
+    }
+
+    /**
+     * @param row    The row.
+     * @param column The column.
+     * @return The stored entry in that cell, or null.
+     */
+    static ServerData get(String row, String column) {
+        build();
+        ConcurrentMap<String, ServerData> columns = ROWS.get(row);
+        if (columns == null || column == null) return null;
+        ServerData data = columns.get(column);
+        if (data == null) return null;
+        if (!isStored(data)) remove(data);
+        else if (!data.isExpired()) return data;
+        return null;
+    }
+
+    /**
+     * @param row The row.
+     * @return The stored entries in that row.
+     */
+    static Collection<ServerData> row(String row) {
+        build();
+        ConcurrentMap<String, ServerData> columns = ROWS.get(row);
+        if (columns == null) return Collections.emptyList();
+        Collection<ServerData> found = Lists.newArrayList();
+        for (ServerData data : columns.values()) {
+            if (!isStored(data)) remove(data);
+            else if (!data.isExpired()) found.add(data);
+        }
+        return found;
+    }
+
+    /**
+     * Index an entry, replacing whatever was in its cell.
+     *
+     * @param data The entry.
+     * @return The entry it replaced, or null.
+     */
+    static ServerData add(ServerData data) {
+        if (data.getRow() == null || data.getColumn() == null) return null;
+        if (ServerDataType.TIMED.equals(data.getType()) && data.getExpiration() != null) {
+            synchronized (DEADLINES) {
+                DEADLINES.add(data);
+            }
+        }
+        while (true) {
+            ConcurrentMap<String, ServerData> columns = ROWS.get(data.getRow());
+            if (columns == null) {
+                ConcurrentMap<String, ServerData> created = new ConcurrentHashMap<String, ServerData>(4, 0.75f, 1);
+                columns = ROWS.putIfAbsent(data.getRow(), created);
+                if (columns == null) columns = created;
+            }
+            ServerData old = columns.put(data.getColumn(), data);
+
+            // The row may have been dropped for being empty in the meantime.
+            if (ROWS.get(data.getRow()) == columns) return old;
+        }
+    }
+
+    /**
+     * Drop an entry, unless its cell already holds a different one.
+     *
+     * @param data The entry.
+     */
+    static void remove(ServerData data) {
+        if (data.getRow() == null || data.getColumn() == null) return;
+        ConcurrentMap<String, ServerData> columns = ROWS.get(data.getRow());
+        if (columns == null) return;
+        columns.remove(data.getColumn(), data);
+        if (columns.isEmpty()) ROWS.remove(data.getRow(), columns);
+    }
+
+    /**
+     * Evict the timed entries that expired.
+     *
+     * @param now The current time.
+     * @return The number of entries evicted.
+     */
+    static int expire(long now) {
+        build();
+        int evicted = 0;
+        while (true) {
+            ServerData data;
+            synchronized (DEADLINES) {
+                data = DEADLINES.peek();
+                if (data == null || data.getExpiration() > now) return evicted;
+                DEADLINES.poll();
+            }
+            if (isStored(data)) {
+                data.remove();
+                evicted++;
+            }
+        }
+    }
+
+    private static boolean isStored(ServerData data) {
+        return DataManager.getManager().<UUID, ServerData, ServerData>getMapFor(ServerData.class).containsKey(data.getId());
+    }
+
+    /**
+     * Index the stored data the first time the index is used. A cell should only ever hold one entry, so any
+     * duplicates left behind by older versions are removed.
+     */
+    private static void build() {
+        if (built) return;
+        synchronized (ROWS) {
+            if (built) return;
+            ConcurrentMap<UUID, ServerData> stored = DataManager.getManager().getMapFor(ServerData.class);
+            for (ServerData data : Lists.newArrayList(stored.values())) {
+                ServerData old = add(data);
+                if (old != null && old != data) stored.remove(old.getId());
+            }
+            built = true;
+        }
+    }
+}
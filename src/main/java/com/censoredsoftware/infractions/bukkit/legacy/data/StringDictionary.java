@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.censoredsoftware.infractions.bukkit.evidence.EvidenceType;
+import com.censoredsoftware.infractions.bukkit.issuer.IssuerType;
+import com.google.common.collect.Maps;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Global dictionary of the strings repeated across records: infraction reasons, evidence types and issuer ids.
+ * <p/>
+ * Each string is kept as one canonical instance, so records with the same reason share a single String. The
+ * binary format gives every dictionary string a code in its file header, even when a file only uses it once.
+ */
+public final class StringDictionary {
+    private static final ConcurrentMap<String, String> WORDS = Maps.newConcurrentMap();
+
+    static {
+        for (EvidenceType type : EvidenceType.values())
+            intern(type.name());
+        for (IssuerType type : IssuerType.values())
+            intern(type.name());
+    }
+
+    /**
+     * Private constructor.
+     */
+    private StringDictionary() {
+    }
+
+    /**
+     * Add strings known up front, like the configured infraction reasons.
+     *
+     * @param strings The strings.
+     */
+    public static void seed(Iterable<String> strings) {
+        for (String string : strings)
+            intern(string);
+    }
+
+    /**
+     * @param string A reason, evidence type or issuer id.
+     * @return The canonical instance of the string.
+     */
+    public static String intern(String string) {
+        if (string == null) return null;
+        String canonical = WORDS.putIfAbsent(string, string);
+        return canonical != null ? canonical : string;
+    }
+
+    public static boolean contains(String string) {
+        return WORDS.containsKey(string);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyCompleteDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.net.InetAddresses;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Compressed binary prefix tree over the addresses stored in dossiers, to find the accounts inside a subnet.
+ * <p/>
+ * IPv4 and IPv6 addresses have their own tree. A subnet lookup walks down to the prefix and collects the subtree
+ * below it, and every branch in a compressed tree ends in an address, so it takes time in the number of matches.
+ * Host names from older dossiers aren't resolved and stay out of the tree.
+ */
+public class SubnetTree {
+    private static final Node IPV4 = new Node(0, 0, 0);
+    private static final Node IPV6 = new Node(0, 0, 0);
+    private static final Object LOCK = new Object();
+    private static volatile boolean built = false;
+
+    private static final class Node {
+        // The first length bits of the addresses below, the rest are 0.
+        final long high, low;
+        final int length;
+        Node zero, one;
+
+        // The dossier ids on a full address.
+        Set<UUID> ids;
+
+        Node(long high, long low, int length) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+        }
+
+        Node child(int bit) {
+            return bit == 0 ? zero : one;
+        }
+
+        void setChild(int bit, Node child) {
+            if (bit == 0) zero = child;
+            else one = child;
+        }
+    }
+
+    /**
+     * Private constructor.
+     */
+    private SubnetTree() {
+    }
+
+    /**
+     * Record an address of a dossier.
+     *
+     * @param id      The dossier id.
+     * @param address The address as stored in the dossier.
+     */
+    public static void add(UUID id, String address) {
+        byte[] bytes = bytesOf(address);
+        if (id == null || bytes == null) return;
+        long high = bits(bytes, 0), low = bits(bytes, 8);
+        int width = bytes.length * 8;
+        synchronized (LOCK) {
+            Node node = rootOf(bytes);
+            while (node.length < width) {
+                int bit = bit(high, low, node.length);
+                Node child = node.child(bit);
+                if (child == null) {
+                    child = new Node(high, low, width);
+                    node.setChild(bit, child);
+                } else {
+                    int common = common(high, low, child.high, child.low, child.length);
+                    if (common < child.length) {
+                        // Split the edge where the addresses part.
+                        Node split = new Node(mask(high, common, 0), mask(low, common, 64), common);
+                        split.setChild(bit(child.high, child.low, common), child);
+                        node.setChild(bit, split);
+                        child = split;
+                    }
+                }
+                node = child;
+            }
+            if (node.ids == null) node.ids = Sets.newHashSetWithExpectedSize(1);
+            node.ids.add(id);
+        }
+    }
+
+    /**
+     * Forget an address of a dossier.
+     *
+     * @param id      The dossier id.
+     * @param address The address as stored in the dossier.
+     */
+    public static void remove(UUID id, String address) {
+        byte[] bytes = bytesOf(address);
+        if (id == null || bytes == null) return;
+        long high = bits(bytes, 0), low = bits(bytes, 8);
+        int width = bytes.length * 8;
+        synchronized (LOCK) {
+            Node grand = null, parent = null, node = rootOf(bytes);
+            while (node != null && node.length < width) {
+                Node child = node.child(bit(high, low, node.length));
+                if (child != null && common(high, low, child.high, child.low, child.length) < child.length) child = null;
+                grand = parent;
+                parent = node;
+                node = child;
+            }
+            if (node == null || node.ids == null || !node.ids.remove(id) || !node.ids.isEmpty()) return;
+
+            // Drop the address, then the branch above it if it's left with one way down.
+            parent.setChild(bit(high, low, parent.length), null);
+            if (grand == null) return;
+            Node other = parent.zero != null ? parent.zero : parent.one;
+            if (other != null) grand.setChild(bit(high, low, grand.length), other);
+        }
+    }
+
+    /**
+     * Find the dossiers with an address inside a subnet.
+     *
+     * @param address An address in the subnet.
+     * @param prefix  The prefix length of the subnet.
+     * @return The dossier ids.
+     */
+    public static Set<UUID> find(InetAddress address, int prefix) {
+        build();
+        byte[] bytes = address.getAddress();
+        long high = bits(bytes, 0), low = bits(bytes, 8);
+        prefix = Math.max(0, Math.min(prefix, bytes.length * 8));
+        Set<UUID> ids = Sets.newHashSet();
+        synchronized (LOCK) {
+            Node node = rootOf(bytes);
+            while (node != null && node.length < prefix) {
+                node = node.child(bit(high, low, node.length));
+                if (node != null && common(high, low, node.high, node.low, Math.min(node.length, prefix)) < Math.min(node.length, prefix))
+                    node = null;
+            }
+            if (node == null) return ids;
+
+            List<Node> stack = Lists.newArrayList(node);
+            while (!stack.isEmpty()) {
+                Node next = stack.remove(stack.size() - 1);
+                if (next.ids != null) ids.addAll(next.ids);
+                if (next.zero != null) stack.add(next.zero);
+                if (next.one != null) stack.add(next.one);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Find the other accounts with an address in the configured subnet around an address.
+     *
+     * @param id      The dossier id to leave out.
+     * @param address The address.
+     * @return The last known names of the accounts.
+     */
+    public static List<String> getNearby(UUID id, InetAddress address) {
+        List<String> names = Lists.newArrayList();
+        for (UUID other : find(address, prefixOf(address))) {
+            if (other.equals(id)) continue;
+            LegacyDossier dossier = DataManager.getManager().getFor(LegacyDossier.class, other);
+            if (dossier instanceof LegacyCompleteDossier && contains((LegacyCompleteDossier) dossier, address))
+                names.add(((LegacyCompleteDossier) dossier).getLastKnownName());
+        }
+        Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    /**
+     * @param address An address.
+     * @return The configured subnet around it, like "203.0.113.0/24".
+     */
+    public static String describe(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        int prefix = prefixOf(address);
+        for (int i = 0; i < bytes.length; i++) {
+            int keep = Math.max(0, Math.min(8, prefix - i * 8));
+            bytes[i] &= (byte) (0xFF00 >>> keep);
+        }
+        try {
+            return InetAddresses.toAddrString(InetAddress.getByAddress(bytes)) + "/" + prefix;
+        } catch (UnknownHostException ignored) {
+            return address.getHostAddress() + "/" + prefix;
+        }
+    }
+
+    /**
+     * @param address An address.
+     * @return The configured prefix length for its family.
+     */
+    public static int prefixOf(InetAddress address) {
+        if (address.getAddress().length == 4)
+            return InfractionsPlugin.getInst().getConfig().getInt("alts.ipv4_prefix", 24);
+        return InfractionsPlugin.getInst().getConfig().getInt("alts.ipv6_prefix", 48);
+    }
+
+    private static boolean contains(LegacyCompleteDossier dossier, InetAddress address) {
+        byte[] bytes = address.getAddress();
+        int prefix = prefixOf(address);
+        for (String stored : dossier.getRawAssociatedIPAddresses()) {
+            byte[] other = bytesOf(stored);
+            if (other != null && other.length == bytes.length && common(bits(bytes, 0), bits(bytes, 8), bits(other, 0), bits(other, 8), prefix) >= prefix)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Index every dossier the first time the tree is used, since stored dossiers aren't always decoded.
+     */
+    private static void build() {
+        if (built) return;
+        synchronized (LOCK) {
+            if (built) return;
+            for (LegacyDossier dossier : DataManager.getManager().<UUID, LegacyDossier, LegacyDossier>getAllOf(LegacyDossier.class))
+                if (dossier instanceof LegacyCompleteDossier)
+                    for (String address : ((LegacyCompleteDossier) dossier).getRawAssociatedIPAddresses())
+                        add(dossier.getId(), address);
+            built = true;
+        }
+    }
+
+    // -- BITS -- //
+
+    private static Node rootOf(byte[] bytes) {
+        return bytes.length == 4 ? IPV4 : IPV6;
+    }
+
+    private static byte[] bytesOf(String address) {
+        if (address == null || !InetAddresses.isInetAddress(address)) return null;
+        return InetAddresses.forString(address).getAddress();
+    }
+
+    /**
+     * @return Up to 8 bytes from an offset, left aligned in a long.
+     */
+    private static long bits(byte[] bytes, int from) {
+        long bits = 0;
+        for (int i = from; i < from + 8; i++)
+            bits = (bits << 8) | (i < bytes.length ? bytes[i] & 0xFF : 0);
+        return bits;
+    }
+
+    private static int bit(long high, long low, int index) {
+        return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+    }
+
+    /**
+     * @return The number of leading bits two addresses share, at most max.
+     */
+    private static int common(long high, long low, long otherHigh, long otherLow, int max) {
+        long diff = high ^ otherHigh;
+        int common = diff != 0 ? Long.numberOfLeadingZeros(diff) : 64 + Long.numberOfLeadingZeros(low ^ otherLow);
+        return Math.min(common, max);
+    }
+
+    /**
+     * @return The bits of one half of an address that are inside a prefix.
+     */
+    private static long mask(long bits, int prefix, int offset) {
+        int keep = Math.max(0, Math.min(64, prefix - offset));
+        return keep == 0 ? 0 : bits & (-1L << (64 - keep));
+    }
+}
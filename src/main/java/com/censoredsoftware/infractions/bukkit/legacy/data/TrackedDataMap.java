@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.google.common.collect.ForwardingConcurrentMap;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent map that stamps every written or removed key with a version.
+ * <p/>
+ * Data managers use the stamps to persist only the records that changed since their last successful flush.
+ * Records that are mutated in place (without going through the map) must call {@link #markDirty(Object)} themselves.
+ *
+ * @param <K> The id type.
+ * @param <I> The stored type.
+ */
+@SuppressWarnings("unchecked")
+public class TrackedDataMap<K, I> extends ForwardingConcurrentMap<K, I> {
+    private final ConcurrentMap<K, I> delegate;
+    private final ConcurrentMap<K, Long> dirty = Maps.newConcurrentMap();
+    private final AtomicLong version = new AtomicLong();
+
+    public TrackedDataMap() {
+        this(Maps.<K, I>newConcurrentMap());
+    }
+
+    /**
+     * @param delegate The map that holds the records.
+     */
+    public TrackedDataMap(ConcurrentMap<K, I> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    protected ConcurrentMap<K, I> delegate() {
+        return delegate;
+    }
+
+    // -- TRACKED WRITES -- //
+
+    @Override
+    public I put(K key, I value) {
+        I old = delegate.put(key, value);
+        markDirty(key);
+        return old;
+    }
+
+    @Override
+    public I putIfAbsent(K key, I value) {
+        I old = delegate.putIfAbsent(key, value);
+        if (old == null) markDirty(key);
+        return old;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends I> map) {
+        for (Map.Entry<? extends K, ? extends I> entry : map.entrySet())
+            put(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public I replace(K key, I value) {
+        I old = delegate.replace(key, value);
+        if (old != null) markDirty(key);
+        return old;
+    }
+
+    @Override
+    public boolean replace(K key, I oldValue, I newValue) {
+        if (!delegate.replace(key, oldValue, newValue)) return false;
+        markDirty(key);
+        return true;
+    }
+
+    @Override
+    public I remove(Object key) {
+        I old = delegate.remove(key);
+        if (old != null) markDirty((K) key);
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!delegate.remove(key, value)) return false;
+        markDirty((K) key);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (K key : delegate.keySet())
+            remove(key);
+    }
+
+    // -- RESIDENT RECORDS -- //
+
+    /**
+     * @return The records that are in memory right now. Stores that keep records encoded override this, so
+     * walking it never decodes anything.
+     */
+    public Collection<I> residentValues() {
+        return values();
+    }
+
+    // -- VERSIONING -- //
+
+    /**
+     * Insert a value that is already persisted, without marking it as dirty.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    public void load(K key, I value) {
+        delegate.put(key, value);
+    }
+
+    /**
+     * Stamp a key with a new version, so that the next save will persist it.
+     * Keys that are no longer present in the map are persisted as removals.
+     *
+     * @param key The key.
+     * @return The new version.
+     */
+    public long markDirty(K key) {
+        long stamp = version.incrementAndGet();
+        if (key != null) {
+            dirty.put(key, stamp);
+            onMarkDirty(key);
+        }
+        return stamp;
+    }
+
+    /**
+     * Called after a key is stamped dirty.
+     *
+     * @param key The key.
+     */
+    protected void onMarkDirty(K key) {
+    }
+
+    /**
+     * Clear the dirty mark of a key, but only if it hasn't been stamped again since the given version was taken.
+     *
+     * @param key     The key.
+     * @param version The version that was persisted.
+     */
+    public void markClean(K key, long version) {
+        if (dirty.remove(key, version)) onMarkClean(key);
+    }
+
+    /**
+     * Called after a key is no longer dirty.
+     *
+     * @param key The key.
+     */
+    protected void onMarkClean(K key) {
+    }
+
+    /**
+     * @return A point-in-time copy of the dirty keys and their versions.
+     */
+    public Map<K, Long> getDirtyKeys() {
+        return new HashMap<K, Long>(dirty);
+    }
+
+    public boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    public boolean isDirty(K key) {
+        return dirty.containsKey(key);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.google.common.base.Charsets;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, typed binary encoding for the maps produced by {@link DataSerializable#serialize()}.
+ * <p/>
+ * Values keep their exact type (an Integer stays an Integer), so records survive a round trip unchanged.
+ */
+public class ValueStreams {
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte LIST = 6;
+    private static final byte MAP = 7;
+
+    /**
+     * Private constructor.
+     */
+    private ValueStreams() {
+    }
+
+    /**
+     * Write a serialized record.
+     *
+     * @param out The output.
+     * @param map The serialized record.
+     * @throws IOException If writing fails.
+     */
+    public static void writeMap(DataOutput out, Map<String, Object> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Read a serialized record.
+     *
+     * @param in The input.
+     * @return The serialized record.
+     * @throws IOException If reading fails.
+     */
+    public static Map<String, Object> readMap(DataInput in) throws IOException {
+        int size = in.readInt();
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < size; i++)
+            map.put(readString(in), readValue(in));
+        return map;
+    }
+
+    /**
+     * Write a string as a length followed by its UTF-8 bytes. Unlike {@link DataOutput#writeUTF(String)}, this
+     * has no 64 KB limit.
+     *
+     * @param out   The output.
+     * @param value The string.
+     * @throws IOException If writing fails.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in The input.
+     * @return The string.
+     * @throws IOException If reading fails.
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid string length: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) out.writeByte(NULL);
+        else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list)
+                writeValue(out, element);
+        } else if (value instanceof ConfigurationSection) {
+            out.writeByte(MAP);
+            writeMap(out, ((ConfigurationSection) value).getValues(false));
+        } else if (value instanceof Map) {
+            out.writeByte(MAP);
+            writeMap(out, (Map<String, Object>) value);
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    public static Object readValue(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DOUBLE:
+                return in.readDouble();
+            case LIST:
+                int size = in.readInt();
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(in));
+                return list;
+            case MAP:
+                return readMap(in);
+        }
+        throw new IOException("Unknown value tag " + tag + ".");
+    }
+
+    /**
+     * Wrap a serialized record in a configuration section, the form every {@link DataCodec} decodes.
+     *
+     * @param map The serialized record.
+     * @return The section.
+     */
+    public static ConfigurationSection toSection(Map<String, Object> map) {
+        return new MemoryConfiguration().createSection("record", map);
+    }
+}
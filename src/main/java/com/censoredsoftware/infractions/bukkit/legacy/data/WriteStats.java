@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write latency and bytes written, per file.
+ */
+public class WriteStats {
+    private static final ConcurrentMap<String, WriteStats> TOTALS = Maps.newConcurrentMap();
+    private static final ConcurrentMap<String, WriteStats> RECENT = Maps.newConcurrentMap();
+
+    private long writes, bytes, nanos, maxNanos;
+
+    private synchronized void add(long bytes, long nanos) {
+        writes++;
+        this.bytes += bytes;
+        this.nanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public synchronized long getMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return writes + " write(s), " + bytes + " bytes in " + getMillis() + " ms (slowest " + getMaxMillis() + " ms)";
+    }
+
+    /**
+     * Record a completed write.
+     *
+     * @param fileName The name of the file.
+     * @param bytes    The bytes written.
+     * @param nanos    How long the write took, from opening the file to replacing the old one.
+     */
+    static void record(String fileName, long bytes, long nanos) {
+        record(TOTALS, fileName, bytes, nanos);
+        record(RECENT, fileName, bytes, nanos);
+    }
+
+    private static void record(ConcurrentMap<String, WriteStats> stats, String fileName, long bytes, long nanos) {
+        stats.putIfAbsent(fileName, new WriteStats());
+        stats.get(fileName).add(bytes, nanos);
+    }
+
+    /**
+     * @return The stats of every file written since the plugin was enabled.
+     */
+    public static Map<String, WriteStats> getTotals() {
+        return ImmutableMap.copyOf(TOTALS);
+    }
+
+    /**
+     * @return The stats of every file written since the last call, which are then reset.
+     */
+    static Map<String, WriteStats> drainRecent() {
+        Map<String, WriteStats> recent = Maps.newHashMap();
+        for (String fileName : RECENT.keySet()) {
+            WriteStats stats = RECENT.remove(fileName);
+            if (stats != null) recent.put(fileName, stats);
+        }
+        return recent;
+    }
+}
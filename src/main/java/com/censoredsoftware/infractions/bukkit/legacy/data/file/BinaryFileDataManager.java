@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.file;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataType;
+
+/**
+ * File data manager that stores each data type in the compact binary format.
+ */
+public class BinaryFileDataManager extends FileDataManager {
+    @Override
+    protected FileFormat createFormat(DataType type) {
+        // Server data is scanned by row and column, so it is always kept in memory. Dossiers kept in direct memory
+        // bring their own store.
+        boolean lazy = InfractionsPlugin.getInst().getConfig().getBoolean("saving.binary.lazy_loading", false);
+        return new BinaryFileFormat(getShards(), lazy && !DataType.SERVER.equals(type) && !OffHeapRecordMap.isEnabled(type.name()));
+    }
+}
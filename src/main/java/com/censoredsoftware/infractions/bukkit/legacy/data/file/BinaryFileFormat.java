@@ -0,0 +1,395 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.file;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
+import com.censoredsoftware.infractions.bukkit.legacy.data.TrackedDataMap;
+import com.censoredsoftware.infractions.bukkit.legacy.data.ValueStreams;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+/**
+ * The compact binary ".kbin" format, see {@link BinaryFileUtil}.
+ * <p/>
+ * In lazy mode only the record positions are read at startup, and records are decoded from the file when they are
+ * first asked for. Saves then copy the bytes of unchanged records straight from the old file, which is why the
+ * dictionary of a lazy file only ever grows. Every shard has its own dictionary.
+ */
+@SuppressWarnings("unchecked")
+public class BinaryFileFormat implements FileFormat {
+    private final Shards shards;
+    private final boolean lazy;
+
+    // The number of shards on disk, 0 before anything was saved.
+    private volatile int stored;
+
+    // Lazy mode, guarded by this.
+    private LazyRecordMap records;
+    private RandomAccessFile[] sources = new RandomAccessFile[0];
+    private BinaryFileUtil.Header[] headers = new BinaryFileUtil.Header[0];
+
+    public BinaryFileFormat() {
+        this(Shards.NONE, false);
+    }
+
+    /**
+     * @param shards How the file is split.
+     * @param lazy   Decode records on first access instead of at load.
+     */
+    public BinaryFileFormat(Shards shards, boolean lazy) {
+        this.shards = shards;
+        this.lazy = lazy;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".kbin";
+    }
+
+    @Override
+    public String getOtherExtension() {
+        return ".know";
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> TrackedDataMap<K, I> createDataStore(final InfractionsFile<K, V, I> file) {
+        if (!lazy) return new TrackedDataMap<K, I>();
+
+        final LazyRecordMap<K, I> map = new LazyRecordMap<K, I>(new LazyRecordMap.Loader<K, I>() {
+            @Override
+            public I load(K key) {
+                return decode(file, key);
+            }
+        });
+        records = map;
+        return new TrackedDataMap<K, I>(map) {
+            @Override
+            protected void onMarkDirty(K key) {
+                map.pin(key);
+            }
+
+            @Override
+            public Collection<I> residentValues() {
+                return map.resident();
+            }
+
+            @Override
+            protected void onMarkClean(K key) {
+                // Records that are stored and clean don't need to stay in memory.
+                map.unpin(key, new Predicate<K>() {
+                    @Override
+                    public boolean apply(K key) {
+                        return isDirty(key);
+                    }
+                });
+            }
+        };
+    }
+
+    private File shardFile(InfractionsFile<?, ?, ?> file, int shard, int count) {
+        return new File(file.getDirectoryPath() + Shards.fileName(file.getFileName(), getExtension(), shard, count));
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> void load(final InfractionsFile<K, V, I> file) throws Exception {
+        final int count = Shards.prepare(file, this);
+        if (!lazy) {
+            shards.forEach(Shards.all(count), new Shards.Task() {
+                @Override
+                public void run(int shard) throws IOException {
+                    for (Map.Entry<String, Map<String, Object>> entry : BinaryFileUtil.readFile(shardFile(file, shard, count)).entrySet())
+                        file.loadRecord(entry.getKey(), ValueStreams.toSection(entry.getValue()));
+                }
+            });
+            stored = count;
+            return;
+        }
+
+        final BinaryFileUtil.Index[] indexes = new BinaryFileUtil.Index[count];
+        shards.forEach(Shards.all(count), new Shards.Task() {
+            @Override
+            public void run(int shard) throws IOException {
+                indexes[shard] = BinaryFileUtil.readIndex(shardFile(file, shard, count));
+            }
+        });
+        Map<K, BinaryFileUtil.Pointer> pointers = Maps.newHashMap();
+        synchronized (this) {
+            sources = new RandomAccessFile[count];
+            headers = new BinaryFileUtil.Header[count];
+            for (int shard = 0; shard < count; shard++) {
+                BinaryFileUtil.Index index = indexes[shard];
+                headers[shard] = index != null ? index.header : new BinaryFileUtil.Header();
+                if (index == null) continue;
+                sources[shard] = new RandomAccessFile(shardFile(file, shard, count), "r");
+                for (Map.Entry<String, BinaryFileUtil.Pointer> entry : index.pointers.entrySet()) {
+                    try {
+                        pointers.put(file.keyFromString(entry.getKey()), entry.getValue());
+                    } catch (Exception ignored) {
+                        InfractionsPlugin.getInst().getLogger().warning("Corrupt: " + entry.getKey() + ", in file: " + file.getFullFileName());
+                    }
+                }
+            }
+            stored = count;
+            records.setPointers(pointers, true);
+        }
+        InfractionsPlugin.getInst().getLogger().info("Indexed " + pointers.size() + " records in \"" + file.getFullFileName() + "\".");
+    }
+
+    private <K, V extends DataSerializable<K>, I> I decode(InfractionsFile<K, V, I> file, K key) {
+        byte[] bytes;
+        BinaryFileUtil.Header used;
+        try {
+            synchronized (this) {
+                BinaryFileUtil.Pointer pointer = records.getPointer(key);
+                int shard = Shards.of(key, stored);
+                if (pointer == null || sources[shard] == null) return null;
+                bytes = BinaryFileUtil.readRecord(sources[shard], pointer);
+                used = headers[shard];
+            }
+            I value = file.valueFromData(key.toString(), ValueStreams.toSection(BinaryFileUtil.decodeRecord(bytes, used)));
+            if (value == null)
+                InfractionsPlugin.getInst().getLogger().warning("Corrupt: " + key + ", in file: " + file.getFullFileName());
+            return value;
+        } catch (IOException oops) {
+            InfractionsPlugin.getInst().getLogger().severe("Unable to read " + key + " from \"" + file.getFullFileName() + "\": " + oops.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public boolean needsSave() {
+        return stored != shards.getCount();
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> boolean save(InfractionsFile<K, V, I> file, Map<K, Long> dirty) {
+        try {
+            int count = shards.getCount();
+            if (count != stored && stored > 0)
+                InfractionsPlugin.getInst().getLogger().info("Splitting \"" + file.getFullFileName() + "\" into " + count + " shard(s).");
+            if (lazy) saveLazy(file, dirty, count);
+            else saveAll(file, dirty, count);
+            return true;
+        } catch (Exception oops) {
+            InfractionsPlugin.getInst().getLogger().severe("Unable to save \"" + file.getFullFileName() + "\": " + oops.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Sort keys into the shards they belong to, only keeping the given shards.
+     */
+    private static <K> Map<Integer, List<K>> bucket(Iterable<K> keys, Collection<Integer> touched, int count) {
+        Map<Integer, List<K>> buckets = Maps.newHashMap();
+        for (int shard : touched)
+            buckets.put(shard, Lists.<K>newArrayList());
+        for (K key : keys) {
+            List<K> bucket = buckets.get(Shards.of(key, count));
+            if (bucket != null) bucket.add(key);
+        }
+        return buckets;
+    }
+
+    /**
+     * @return The shards to rewrite, every one of them when resharding.
+     */
+    private <K> Set<Integer> touched(Map<K, Long> dirty, int count) {
+        if (count != stored) return new TreeSet<Integer>(Shards.all(count));
+        Set<Integer> touched = new TreeSet<Integer>();
+        for (K key : dirty.keySet())
+            touched.add(Shards.of(key, count));
+        return touched;
+    }
+
+    private <K, V extends DataSerializable<K>, I> void saveAll(final InfractionsFile<K, V, I> file, Map<K, Long> dirty, final int count) throws Exception {
+        final TrackedDataMap<K, I> data = file.getLoadedData();
+        final Map<Integer, List<K>> buckets = bucket(data.keySet(), touched(dirty, count), count);
+
+        // The dictionary depends on every record, so each shard that changed is rewritten whole.
+        shards.forEach(buckets.keySet(), new Shards.Task() {
+            @Override
+            public void run(int shard) throws IOException {
+                Map<String, Map<String, Object>> records = new LinkedHashMap<String, Map<String, Object>>();
+                for (K key : buckets.get(shard)) {
+                    I value = data.get(key);
+                    if (value != null) records.put(key.toString(), file.encode(value));
+                }
+                BinaryFileUtil.writeFile(shardFile(file, shard, count), records);
+            }
+        });
+
+        if (count != stored) {
+            Shards.deleteOthers(file.getDirectoryPath(), file.getFileName(), getExtension(), count);
+            stored = count;
+        }
+    }
+
+    /**
+     * A shard written but not yet committed.
+     */
+    private static class Written<K> {
+        final BinaryFileUtil.Writer writer;
+        final BinaryFileUtil.Header header;
+        final Map<K, BinaryFileUtil.Pointer> pointers = Maps.newHashMap();
+
+        Written(BinaryFileUtil.Writer writer, BinaryFileUtil.Header header) {
+            this.writer = writer;
+            this.header = header;
+        }
+    }
+
+    private <K, V extends DataSerializable<K>, I> void saveLazy(final InfractionsFile<K, V, I> file, final Map<K, Long> dirty, final int count) throws Exception {
+        final LazyRecordMap<K, I> map = records;
+        final int from = stored;
+        final Map<Integer, List<K>> buckets = bucket(Lists.newArrayList(map.keySet()), touched(dirty, count), count);
+
+        // Write every shard that changed next to the old files.
+        final Map<Integer, Written<K>> written = Collections.synchronizedMap(new TreeMap<Integer, Written<K>>());
+        try {
+            shards.forEach(buckets.keySet(), new Shards.Task() {
+                @Override
+                public void run(int shard) throws IOException {
+                    written.put(shard, writeShard(file, map, buckets.get(shard), dirty, shard, from, count));
+                }
+            });
+        } catch (Exception oops) {
+            for (Written<K> shard : written.values())
+                shard.writer.abort();
+            throw oops;
+        }
+
+        // Swap to the new files.
+        synchronized (this) {
+            if (count == from) swap(file, map, written);
+            else reshard(file, map, written, count);
+        }
+        if (count != from) Shards.deleteOthers(file.getDirectoryPath(), file.getFileName(), getExtension(), count);
+    }
+
+    private <K, V extends DataSerializable<K>, I> Written<K> writeShard(InfractionsFile<K, V, I> file, LazyRecordMap<K, I> map, List<K> keys, Map<K, Long> dirty, int shard, int from, int count) throws IOException {
+        // Serialize what changed, copy everything else as it is.
+        Map<K, Map<String, Object>> fresh = new LinkedHashMap<K, Map<String, Object>>();
+        Map<K, BinaryFileUtil.Pointer> copied = new LinkedHashMap<K, BinaryFileUtil.Pointer>();
+        for (K key : keys) {
+            BinaryFileUtil.Pointer pointer = map.getPointer(key);
+            if (pointer != null && !dirty.containsKey(key)) {
+                if (count == from) copied.put(key, pointer);
+                else {
+                    // Records move between shards, so they are decoded with the dictionary of their old shard.
+                    byte[] bytes;
+                    BinaryFileUtil.Header used;
+                    synchronized (this) {
+                        int old = Shards.of(key, from);
+                        bytes = BinaryFileUtil.readRecord(sources[old], pointer);
+                        used = headers[old];
+                    }
+                    fresh.put(key, BinaryFileUtil.decodeRecord(bytes, used));
+                }
+                continue;
+            }
+            I value = file.getLoadedData().get(key);
+            if (value != null) fresh.put(key, file.encode(value));
+        }
+
+        BinaryFileUtil.Header extended;
+        synchronized (this) {
+            extended = (count == from ? headers[shard] : new BinaryFileUtil.Header()).extend(fresh.values());
+        }
+        BinaryFileUtil.Writer writer = new BinaryFileUtil.Writer(shardFile(file, shard, count), extended, copied.size() + fresh.size());
+        Written<K> written = new Written<K>(writer, extended);
+        try {
+            for (Map.Entry<K, BinaryFileUtil.Pointer> entry : copied.entrySet()) {
+                byte[] bytes;
+                synchronized (this) {
+                    bytes = BinaryFileUtil.readRecord(sources[shard], entry.getValue());
+                }
+                written.pointers.put(entry.getKey(), writer.write(entry.getKey().toString(), bytes));
+            }
+            for (Map.Entry<K, Map<String, Object>> entry : fresh.entrySet())
+                written.pointers.put(entry.getKey(), writer.write(entry.getKey().toString(), BinaryFileUtil.encodeRecord(entry.getValue(), extended)));
+        } catch (IOException oops) {
+            writer.abort();
+            throw oops;
+        }
+        return written;
+    }
+
+    /**
+     * Replace shards in place. Whichever file is in place afterwards is reopened, even if the swap failed.
+     */
+    private <K> void swap(InfractionsFile<?, ?, ?> file, LazyRecordMap<K, ?> map, Map<Integer, Written<K>> written) throws IOException {
+        IOException failure = null;
+        for (Map.Entry<Integer, Written<K>> entry : written.entrySet()) {
+            int shard = entry.getKey();
+            if (failure != null) {
+                entry.getValue().writer.abort();
+                continue;
+            }
+            if (sources[shard] != null) sources[shard].close();
+            sources[shard] = null;
+            try {
+                entry.getValue().writer.commit();
+                headers[shard] = entry.getValue().header;
+                map.setPointers(entry.getValue().pointers, false);
+            } catch (IOException oops) {
+                failure = oops;
+            } finally {
+                File binary = shardFile(file, shard, stored);
+                if (binary.exists()) sources[shard] = new RandomAccessFile(binary, "r");
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Switch to a new layout. The new files never replace old ones, so the old layout stays open until all of them
+     * are in place.
+     */
+    private <K> void reshard(InfractionsFile<?, ?, ?> file, LazyRecordMap<K, ?> map, Map<Integer, Written<K>> written, int count) throws IOException {
+        try {
+            for (Written<K> shard : written.values())
+                shard.writer.commit();
+        } catch (IOException oops) {
+            for (Written<K> shard : written.values())
+                shard.writer.abort();
+            throw oops;
+        }
+
+        for (RandomAccessFile source : sources)
+            if (source != null) source.close();
+        sources = new RandomAccessFile[count];
+        headers = new BinaryFileUtil.Header[count];
+        for (int shard = 0; shard < count; shard++) {
+            sources[shard] = new RandomAccessFile(shardFile(file, shard, count), "r");
+            headers[shard] = written.get(shard).header;
+            map.setPointers(written.get(shard).pointers, false);
+        }
+        stored = count;
+    }
+
+    @Override
+    public void convert(String path, String from, String to) throws Exception {
+        BinaryFileUtil.yamlToBinary(new File(path + from), new File(path + to));
+    }
+}
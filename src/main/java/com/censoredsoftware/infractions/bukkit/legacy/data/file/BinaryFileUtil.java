@@ -0,0 +1,568 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.file;
+
+import com.censoredsoftware.infractions.bukkit.legacy.data.AtomicFile;
+import com.censoredsoftware.infractions.bukkit.legacy.data.StringDictionary;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Utility for the compact binary ".kbin" format.
+ * <p/>
+ * Layout: a versioned header, the base time, a dictionary of every string used more than once, then one
+ * length-prefixed entry per record. UUID strings are stored as two longs, timestamps as deltas from the
+ * base time, repeated strings (reasons, issuer ids, field names, types) as dictionary codes, and all
+ * integers as variable length numbers. Every value keeps its type, so the format converts losslessly to
+ * and from the YAML ".know" files.
+ */
+public class BinaryFileUtil {
+    static final int MAGIC = 0x494E4642; // "INFB"
+    static final int VERSION = 1;
+
+    // Value tags.
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int REF = 2;
+    private static final int UUID_PAIR = 3;
+    private static final int INTEGER = 4;
+    private static final int LONG = 5;
+    private static final int TIME = 6;
+    private static final int TRUE = 7;
+    private static final int FALSE = 8;
+    private static final int DOUBLE = 9;
+    private static final int LIST = 10;
+    private static final int MAP = 11;
+
+    // Millisecond timestamps between 2001 and 5138.
+    private static final long MIN_TIME = 1000000000000L;
+    private static final long MAX_TIME = 100000000000000L;
+
+    /**
+     * Private constructor.
+     */
+    private BinaryFileUtil() {
+    }
+
+    // -- FILES -- //
+
+    /**
+     * Read every record in a binary file.
+     *
+     * @param file The file.
+     * @return The serialized records, by string id, in file order.
+     * @throws IOException If the file can't be read.
+     */
+    public static Map<String, Map<String, Object>> readFile(File file) throws IOException {
+        Map<String, Map<String, Object>> records = new LinkedHashMap<String, Map<String, Object>>();
+        if (!file.exists() || file.length() == 0) return records;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            Header header = readHeader(in, file);
+            long count = readVarLong(in);
+            for (long i = 0; i < count; i++) {
+                String key = (String) readValue(in, header);
+                readVarLong(in); // Record length, only needed to skip records.
+                records.put(key, readMap(in, header));
+            }
+        } finally {
+            in.close();
+        }
+        return records;
+    }
+
+    /**
+     * Write records to a binary file, replacing it once the new file is complete.
+     *
+     * @param file    The file.
+     * @param records The serialized records, by string id.
+     * @throws IOException If the file can't be written.
+     */
+    public static void writeFile(File file, Map<String, Map<String, Object>> records) throws IOException {
+        Header header = buildHeader(records);
+
+        AtomicFile atomic = new AtomicFile(file);
+        DataOutputStream out = new DataOutputStream(atomic.getStream());
+        try {
+            writeHeader(out, header);
+            writeVarLong(out, records.size());
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(buffer);
+            for (Map.Entry<String, Map<String, Object>> entry : records.entrySet()) {
+                buffer.reset();
+                writeMap(record, entry.getValue(), header);
+                record.flush();
+                writeValue(out, entry.getKey(), header);
+                writeVarLong(out, buffer.size());
+                buffer.writeTo(out);
+            }
+            out.flush();
+            atomic.commit();
+        } finally {
+            atomic.abort();
+        }
+    }
+
+    // -- RANDOM ACCESS -- //
+
+    /**
+     * Where a record's bytes are in a file.
+     */
+    static class Pointer {
+        final long offset;
+        final int length;
+
+        Pointer(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The header of a file and the position of every record, read without decoding any record.
+     */
+    static class Index {
+        final Header header;
+        final Map<String, Pointer> pointers;
+
+        Index(Header header, Map<String, Pointer> pointers) {
+            this.header = header;
+            this.pointers = pointers;
+        }
+    }
+
+    /**
+     * Read the header and the record positions of a binary file.
+     *
+     * @param file The file.
+     * @return The index, or null if the file doesn't exist yet.
+     * @throws IOException If the file can't be read.
+     */
+    static Index readIndex(File file) throws IOException {
+        if (!file.exists() || file.length() == 0) return null;
+
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+        DataInputStream in = new DataInputStream(counter);
+        try {
+            Header header = readHeader(in, file);
+            long count = readVarLong(in);
+            Map<String, Pointer> pointers = new LinkedHashMap<String, Pointer>();
+            for (long i = 0; i < count; i++) {
+                String key = (String) readValue(in, header);
+                long length = readVarLong(in);
+                if (length > Integer.MAX_VALUE) throw new IOException("Record too long.");
+                pointers.put(key, new Pointer(counter.getCount(), (int) length));
+                ByteStreams.skipFully(in, length);
+            }
+            return new Index(header, pointers);
+        } finally {
+            in.close();
+        }
+    }
+
+    static byte[] readRecord(RandomAccessFile file, Pointer pointer) throws IOException {
+        byte[] bytes = new byte[pointer.length];
+        file.seek(pointer.offset);
+        file.readFully(bytes);
+        return bytes;
+    }
+
+    static Map<String, Object> decodeRecord(byte[] bytes, Header header) throws IOException {
+        return readMap(new DataInputStream(new ByteArrayInputStream(bytes)), header);
+    }
+
+    static byte[] encodeRecord(Map<String, Object> record, Header header) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        writeMap(out, record, header);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Writes a file record by record, for copying already encoded records from an older file.
+     */
+    static class Writer {
+        private final AtomicFile file;
+        private final CountingOutputStream counter;
+        private final DataOutputStream out;
+        private final Header header;
+
+        Writer(File file, Header header, long count) throws IOException {
+            this.file = new AtomicFile(file);
+            this.header = header;
+            counter = new CountingOutputStream(this.file.getStream());
+            out = new DataOutputStream(counter);
+            writeHeader(out, header);
+            writeVarLong(out, count);
+        }
+
+        /**
+         * @return Where the record's bytes were written.
+         */
+        Pointer write(String key, byte[] record) throws IOException {
+            writeValue(out, key, header);
+            writeVarLong(out, record.length);
+            Pointer pointer = new Pointer(counter.getCount(), record.length);
+            out.write(record);
+            return pointer;
+        }
+
+        /**
+         * Replace the file with everything written so far.
+         */
+        void commit() throws IOException {
+            out.flush();
+            file.commit();
+        }
+
+        void abort() {
+            file.abort();
+        }
+    }
+
+    // -- CONVERSION -- //
+
+    /**
+     * Convert a YAML ".know" file into a binary file.
+     *
+     * @param yaml   The YAML file.
+     * @param binary The binary file.
+     * @throws IOException If either file can't be accessed.
+     */
+    public static void yamlToBinary(File yaml, File binary) throws IOException {
+        Map<String, Map<String, Object>> records = new LinkedHashMap<String, Map<String, Object>>();
+        YamlStream.Reader reader = new YamlStream.Reader(yaml);
+        try {
+            YamlStream.Record record;
+            while ((record = reader.next()) != null) {
+                ConfigurationSection section = reader.read(record);
+                if (section != null) records.put(record.key, toMap(section));
+            }
+        } finally {
+            reader.close();
+        }
+        writeFile(binary, records);
+    }
+
+    /**
+     * Convert a binary file into a YAML ".know" file.
+     *
+     * @param binary The binary file.
+     * @param yaml   The YAML file.
+     * @throws IOException If either file can't be accessed.
+     */
+    public static void binaryToYaml(File binary, File yaml) throws IOException {
+        YamlStream.Writer writer = new YamlStream.Writer(yaml);
+        try {
+            for (Map.Entry<String, Map<String, Object>> entry : readFile(binary).entrySet())
+                writer.write(entry.getKey(), entry.getValue());
+        } catch (IOException oops) {
+            writer.abort();
+            throw oops;
+        }
+        writer.commit();
+    }
+
+    private static Map<String, Object> toMap(ConfigurationSection section) {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : section.getValues(false).entrySet()) {
+            Object value = entry.getValue();
+            map.put(entry.getKey(), value instanceof ConfigurationSection ? toMap((ConfigurationSection) value) : value);
+        }
+        return map;
+    }
+
+    // -- HEADER -- //
+
+    /**
+     * Everything shared by the records of a file.
+     */
+    static class Header {
+        long baseTime;
+        final List<String> strings = Lists.newArrayList();
+        final Map<String, Integer> codes = Maps.newHashMap();
+
+        void add(String string) {
+            codes.put(string, strings.size());
+            strings.add(string);
+        }
+
+        /**
+         * Copy this header, adding the strings repeated in the given records. Existing codes keep their meaning,
+         * so records encoded with this header stay valid with the copy.
+         */
+        Header extend(Collection<Map<String, Object>> records) {
+            Map<String, Integer> counts = Maps.newHashMap();
+            long[] minTime = {Long.MAX_VALUE};
+            for (Map<String, Object> record : records)
+                count(record, counts, minTime);
+
+            Header header = new Header();
+            header.baseTime = baseTime != 0 || minTime[0] == Long.MAX_VALUE ? baseTime : minTime[0];
+            for (String string : strings)
+                header.add(string);
+            for (Map.Entry<String, Integer> entry : counts.entrySet())
+                if ((entry.getValue() > 1 || StringDictionary.contains(entry.getKey())) && !header.codes.containsKey(entry.getKey()))
+                    header.add(entry.getKey());
+            return header;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Header buildHeader(Map<String, Map<String, Object>> records) {
+        final Map<String, Integer> counts = Maps.newHashMap();
+        long[] minTime = {Long.MAX_VALUE};
+        for (Map<String, Object> record : records.values())
+            count(record, counts, minTime);
+
+        // Most used strings get the shortest codes. Dictionary strings are coded even if used once.
+        List<String> repeated = Lists.newArrayList();
+        for (Map.Entry<String, Integer> entry : counts.entrySet())
+            if (entry.getValue() > 1 || StringDictionary.contains(entry.getKey())) repeated.add(entry.getKey());
+        Collections.sort(repeated, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return counts.get(b).compareTo(counts.get(a));
+            }
+        });
+
+        Header header = new Header();
+        header.baseTime = minTime[0] == Long.MAX_VALUE ? 0 : minTime[0];
+        for (String string : repeated)
+            header.add(string);
+        return header;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void count(Object value, Map<String, Integer> counts, long[] minTime) {
+        if (value instanceof ConfigurationSection) value = ((ConfigurationSection) value).getValues(false);
+        if (value instanceof String) {
+            if (isUUID((String) value)) return;
+            Integer count = counts.get(value);
+            counts.put((String) value, count == null ? 1 : count + 1);
+        } else if (value instanceof Long) {
+            long time = (Long) value;
+            if (isTime(time) && time < minTime[0]) minTime[0] = time;
+        } else if (value instanceof List) {
+            for (Object element : (List<Object>) value)
+                count(element, counts, minTime);
+        } else if (value instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                count(entry.getKey(), counts, minTime);
+                count(entry.getValue(), counts, minTime);
+            }
+        }
+    }
+
+    static void writeHeader(DataOutput out, Header header) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(header.baseTime);
+        writeVarLong(out, header.strings.size());
+        for (String string : header.strings)
+            writeString(out, string);
+    }
+
+    static Header readHeader(DataInput in, File file) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("\"" + file.getName() + "\" is not an Infractions binary file.");
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("\"" + file.getName() + "\" uses unsupported binary format version " + version + ".");
+        Header header = new Header();
+        header.baseTime = in.readLong();
+        long size = readVarLong(in);
+        for (long i = 0; i < size; i++)
+            header.add(readString(in));
+        return header;
+    }
+
+    // -- VALUES -- //
+
+    @SuppressWarnings("unchecked")
+    static void writeMap(DataOutput out, Map<String, Object> map, Header header) throws IOException {
+        writeVarLong(out, map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writeValue(out, entry.getKey(), header);
+            writeValue(out, entry.getValue(), header);
+        }
+    }
+
+    static Map<String, Object> readMap(DataInput in, Header header) throws IOException {
+        long size = readVarLong(in);
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (long i = 0; i < size; i++)
+            map.put((String) readValue(in, header), readValue(in, header));
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    static void writeValue(DataOutput out, Object value, Header header) throws IOException {
+        if (value instanceof ConfigurationSection) value = ((ConfigurationSection) value).getValues(false);
+        if (value == null) out.writeByte(NULL);
+        else if (value instanceof String) {
+            String string = (String) value;
+            Integer code = header.codes.get(string);
+            if (code != null) {
+                out.writeByte(REF);
+                writeVarLong(out, code);
+            } else if (isUUID(string)) {
+                java.util.UUID id = java.util.UUID.fromString(string);
+                out.writeByte(UUID_PAIR);
+                out.writeLong(id.getMostSignificantBits());
+                out.writeLong(id.getLeastSignificantBits());
+            } else {
+                out.writeByte(STRING);
+                writeString(out, string);
+            }
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(INTEGER);
+            writeVarLong(out, zigZag(((Number) value).intValue()));
+        } else if (value instanceof Long) {
+            long number = (Long) value;
+            if (isTime(number)) {
+                out.writeByte(TIME);
+                writeVarLong(out, zigZag(number - header.baseTime));
+            } else {
+                out.writeByte(LONG);
+                writeVarLong(out, zigZag(number));
+            }
+        } else if (value instanceof Boolean) out.writeByte((Boolean) value ? TRUE : FALSE);
+        else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            out.writeByte(LIST);
+            writeVarLong(out, list.size());
+            for (Object element : list)
+                writeValue(out, element, header);
+        } else if (value instanceof Map) {
+            out.writeByte(MAP);
+            writeMap(out, (Map<String, Object>) value, header);
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    static Object readValue(DataInput in, Header header) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case REF:
+                long code = readVarLong(in);
+                if (code >= header.strings.size()) throw new IOException("Unknown dictionary code " + code + ".");
+                return header.strings.get((int) code);
+            case UUID_PAIR:
+                return new java.util.UUID(in.readLong(), in.readLong()).toString();
+            case INTEGER:
+                return (int) unZigZag(readVarLong(in));
+            case LONG:
+                return unZigZag(readVarLong(in));
+            case TIME:
+                return header.baseTime + unZigZag(readVarLong(in));
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            case DOUBLE:
+                return in.readDouble();
+            case LIST:
+                long size = readVarLong(in);
+                List<Object> list = new ArrayList<Object>((int) Math.min(size, 1024));
+                for (long i = 0; i < size; i++)
+                    list.add(readValue(in, header));
+                return list;
+            case MAP:
+                return readMap(in, header);
+        }
+        throw new IOException("Unknown value tag " + tag + ".");
+    }
+
+    private static boolean isTime(long number) {
+        return number >= MIN_TIME && number < MAX_TIME;
+    }
+
+    /**
+     * Check if a string is a UUID in its canonical form, the only form that survives being stored as two longs.
+     */
+    private static boolean isUUID(String string) {
+        if (string.length() != 36) return false;
+        for (int i = 0; i < 36; i++) {
+            char c = string.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') return false;
+            } else if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) return false;
+        }
+        return true;
+    }
+
+    // -- PRIMITIVES -- //
+
+    static void writeString(DataOutput out, String string) throws IOException {
+        byte[] bytes = string.getBytes(Charsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        long length = readVarLong(in);
+        if (length > Integer.MAX_VALUE) throw new IOException("String too long.");
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed variable length number.");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -20,6 +20,7 @@ import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataType;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataTypeExecutor;
 import com.censoredsoftware.infractions.bukkit.legacy.data.TempDataManager;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -44,6 +45,9 @@ public class FileDataManager extends DataManager {
     // -- YAML FILES -- //
 
     public ConcurrentMap<Class, InfractionsFile> yamlFiles;
+    private List<DataType> dataTypes;
+    private DataTypeExecutor executor;
+    private Shards shards;
 
     // -- UTIL METHODS -- //
 
@@ -55,43 +59,82 @@ public class FileDataManager extends DataManager {
         // Check if init has happened already...
         if (didInit) throw new RuntimeException("Data tried to initialize more than once.");
 
-        // Preserve the load order.
-        List<Class> fileOrder = Lists.newArrayList();
-
         // Create YAML files.
+        shards = new Shards(InfractionsPlugin.getInst().getConfig().getInt("saving.shards", 1), "Infractions Shards");
+        dataTypes = Lists.newArrayList();
         yamlFiles = Maps.newConcurrentMap();
         for (DataType dataType : DataType.values()) {
-            InfractionsFile file = InfractionsFileFactory.create(dataType, SAVE_PATH);
+            InfractionsFile file = InfractionsFileFactory.create(dataType, SAVE_PATH, createFormat(dataType));
             if (file == null) continue;
             InfractionsPlugin.getInst().getLogger().info("Marked \"" + dataType.name() + "\" for data import.");
             yamlFiles.put(dataType.getDataClass(), file);
-            fileOrder.add(dataType.getDataClass());
+            dataTypes.add(dataType);
         }
 
-        // Load YAML files.
-        for (Class clazz : fileOrder) {
-            InfractionsFile file = yamlFiles.get(clazz);
-            try {
-                file.loadDataFromFile();
-            } catch (Exception ex) {
-                InfractionsPlugin.getInst().getLogger().severe("Failure to import data from \"" + file.getName() + "\" file.");
-                continue;
+        // Load YAML files in parallel, each after the files it depends on.
+        executor = new DataTypeExecutor("Infractions Data");
+        executor.load(dataTypes, new DataTypeExecutor.Task() {
+            @Override
+            public void run(DataType type) {
+                InfractionsFile file = yamlFiles.get(type.getDataClass());
+                try {
+                    file.loadDataFromFile();
+                } catch (Exception ex) {
+                    InfractionsPlugin.getInst().getLogger().severe("Failure to import data from \"" + file.getName() + "\" file.");
+                    return;
+                }
+                InfractionsPlugin.getInst().getLogger().info("Data import from \"" + file.getName() + "\" file complete.");
             }
-            InfractionsPlugin.getInst().getLogger().info("Data import from \"" + file.getName() + "\" file complete.");
-        }
+        });
 
         // Let the plugin know that this has finished.
         didInit = true;
     }
 
+    /**
+     * @param type The data type of the file.
+     * @return A new instance of the format the file is stored in.
+     */
+    protected FileFormat createFormat(DataType type) {
+        return new YamlFileFormat(shards);
+    }
+
+    /**
+     * @return How the files are split.
+     */
+    protected Shards getShards() {
+        return shards;
+    }
+
+    /**
+     * Split every file into a different number of shards. Files are rewritten on the next save, and stay
+     * available the whole time.
+     *
+     * @param count The number of shards per file.
+     */
+    public void reshard(int count) {
+        if (didInit) shards.setCount(count);
+    }
+
     @Override
     public void save() {
         // Make sure data actually is loaded.
         if (!didInit) return;
 
-        // Save all data.
-        for (InfractionsFile data : yamlFiles.values())
-            data.saveDataToFile();
+        // Save all data in parallel, each file after the files that can add to it.
+        executor.save(dataTypes, new DataTypeExecutor.Task() {
+            @Override
+            public void run(DataType type) {
+                yamlFiles.get(type.getDataClass()).saveDataToFile();
+            }
+        });
+    }
+
+    @Override
+    protected void close() {
+        if (!didInit) return;
+        executor.shutdown();
+        shards.shutdown();
     }
 
     @Override
@@ -129,6 +172,11 @@ public class FileDataManager extends DataManager {
         return (ConcurrentMap<K, I>) getFile(clazz).getLoadedData();
     }
 
+    @Override
+    public <K, V extends DataSerializable<K>> void markDirty(final Class<V> clazz, final K key) {
+        getFile(clazz).markDirty(key);
+    }
+
     @SuppressWarnings("unchecked")
     private <K, V extends DataSerializable<K>, I> InfractionsFile<K, V, I> getFile(Class<V> clazz) {
         if (yamlFiles.containsKey(clazz)) return (InfractionsFile<K, V, I>) yamlFiles.get(clazz);
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.file;
+
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
+import com.censoredsoftware.infractions.bukkit.legacy.data.TrackedDataMap;
+
+import java.util.Map;
+
+/**
+ * The on-disk layout of an InfractionsFile.
+ * <p/>
+ * Each InfractionsFile owns its own instance, so formats are free to keep state between a load and later saves.
+ */
+public interface FileFormat {
+    /**
+     * @return The file extension, including the dot.
+     */
+    String getExtension();
+
+    /**
+     * @return The extension used by the other available format, for conversion.
+     */
+    String getOtherExtension();
+
+    /**
+     * Create the map that holds the file's records in memory.
+     *
+     * @param file The InfractionsFile being constructed.
+     * @return The data store.
+     */
+    <K, V extends DataSerializable<K>, I> TrackedDataMap<K, I> createDataStore(InfractionsFile<K, V, I> file);
+
+    /**
+     * Read the file into the file's data store, converting it from the other format first if only that one exists.
+     *
+     * @param file The InfractionsFile.
+     * @throws Exception If the file can't be read.
+     */
+    <K, V extends DataSerializable<K>, I> void load(InfractionsFile<K, V, I> file) throws Exception;
+
+    /**
+     * @return The file has to be rewritten even if no record changed, for example to change its shards.
+     */
+    boolean needsSave();
+
+    /**
+     * Persist the given dirty keys. Keys missing from the data store are removals.
+     *
+     * @param file  The InfractionsFile.
+     * @param dirty The dirty keys.
+     * @return Saved successfully.
+     */
+    <K, V extends DataSerializable<K>, I> boolean save(InfractionsFile<K, V, I> file, Map<K, Long> dirty);
+
+    /**
+     * Losslessly convert a file from the other format into this one.
+     *
+     * @param path The file directory path.
+     * @param from The name of the file in the other format.
+     * @param to   The name of the file to create.
+     * @throws Exception If the conversion fails.
+     */
+    void convert(String path, String from, String to) throws Exception;
+}
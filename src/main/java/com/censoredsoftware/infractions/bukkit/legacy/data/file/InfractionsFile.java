@@ -17,62 +17,102 @@
 package com.censoredsoftware.infractions.bukkit.legacy.data.file;
 
 import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataCodec;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
-import com.google.common.collect.Maps;
+import com.censoredsoftware.infractions.bukkit.legacy.data.TrackedDataMap;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
 
-import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 /**
- * Abstract class extending ConfigFile for easy yaml file creation inside of Demigods.
+ * Abstract class for easy data file creation inside of Infractions.
  *
  * @param <K> The id type.
  * @param <V> The data type.
  */
 public abstract class InfractionsFile<K, V extends DataSerializable<K>, I> {
     private final String name;
-    private final String fileName, fileType, savePath;
-    ConcurrentMap<K, I> dataStore = Maps.newConcurrentMap();
-    Method valueConstructor;
+    private final String fileName, savePath;
+    private final FileFormat format;
+    final TrackedDataMap<K, I> dataStore;
+    final DataCodec<K, V> codec;
 
-    public InfractionsFile(String fileName, String fileType, String savePath, String name, Method valueConstructor) {
+    // Never overwrite a file that failed to load.
+    private boolean loaded = false;
+
+    public InfractionsFile(String fileName, FileFormat format, String savePath, String name, DataCodec<K, V> codec) {
         this.fileName = fileName;
-        this.fileType = fileType;
+        this.format = format;
         this.savePath = savePath;
         this.name = name;
-        this.valueConstructor = valueConstructor;
+        this.codec = codec;
+        this.dataStore = OffHeapRecordMap.isEnabled(name) ? OffHeapRecordMap.createStore(this) : format.createDataStore(this);
     }
 
     public final String getName() {
         return name;
     }
 
-    public final ConcurrentMap<K, I> getLoadedData() {
+    public final TrackedDataMap<K, I> getLoadedData() {
         return dataStore;
     }
 
     @SuppressWarnings("unchecked")
     public final Map<String, Object> serialize(K id) {
-        return ((V) getLoadedData().get(id)).serialize();
+        return encode(getLoadedData().get(id));
+    }
+
+    /**
+     * @param value A record of this file.
+     * @return The serialized record.
+     */
+    @SuppressWarnings("unchecked")
+    public final Map<String, Object> encode(I value) {
+        return codec.encode((V) value);
     }
 
     public String getDirectoryPath() {
         return savePath;
     }
 
+    /**
+     * @return The file name, without extension or shard number.
+     */
+    public final String getFileName() {
+        return fileName;
+    }
+
     public final String getFullFileName() {
-        return fileName + fileType;
+        return fileName + format.getExtension();
     }
 
-    public final void loadDataFromFile() {
-        dataStore = getCurrentFileData();
+    public final FileFormat getFormat() {
+        return format;
+    }
+
+    public final synchronized void loadDataFromFile() throws Exception {
+        format.load(this);
+        loaded = true;
+    }
+
+    /**
+     * Decode a record read from the file and add it to the data store, without marking it dirty.
+     *
+     * @param stringId The string key for the data.
+     * @param data     The provided data object.
+     */
+    final void loadRecord(String stringId, ConfigurationSection data) {
+        try {
+            I v = valueFromData(stringId, data);
+            if (stringId.equals("null") || v == null) {
+                InfractionsPlugin.getInst().getLogger().warning("Corrupt: " + stringId + ", in file: " + getFullFileName());
+                return;
+            }
+            dataStore.load(keyFromString(stringId), v);
+        } catch (Exception ignored) {
+            ignored.printStackTrace();
+        }
     }
 
     public final boolean containsKey(K key) {
@@ -95,52 +135,28 @@ public abstract class InfractionsFile<K, V extends DataSerializable<K>, I> {
         dataStore.clear();
     }
 
-    public ConcurrentMap<K, I> getCurrentFileData() {
-        // Grab the current file.
-        FileConfiguration data = YamlFileUtil.getConfiguration(getDirectoryPath(), getFullFileName());
-
-        // Convert the raw file data into more usable data, in map form.
-        ConcurrentHashMap<K, I> map = new ConcurrentHashMap<K, I>();
-        for (String stringId : data.getKeys(false)) {
-            try {
-                I v = valueFromData(stringId, data.getConfigurationSection(stringId));
-                if (stringId.equals("null") || v == null) {
-                    InfractionsPlugin.getInst().getLogger().warning("Corrupt: " + stringId + ", in file: " + getFullFileName());
-                    continue;
-                }
-                map.put(keyFromString(stringId), valueFromData(stringId, data.getConfigurationSection(stringId)));
-            } catch (Exception ignored) {
-                ignored.printStackTrace();
-            }
-        }
-        return map;
+    public final void markDirty(K key) {
+        dataStore.markDirty(key);
     }
 
-    public boolean saveDataToFile() {
-        // Grab the current file, and its data as a usable map.
-        FileConfiguration currentFile = YamlFileUtil.getConfiguration(getDirectoryPath(), getFullFileName());
-        final Map<K, I> currentFileMap = getCurrentFileData();
+    public synchronized boolean saveDataToFile() {
+        // Never overwrite a file that failed to load.
+        if (!loaded) {
+            InfractionsPlugin.getInst().getLogger().severe("Refusing to save \"" + getFullFileName() + "\", it was never loaded.");
+            return false;
+        }
 
-        // Create/overwrite a configuration section if new data exists.
-        for (K key : Collections2.filter(getLoadedData().keySet(), new Predicate<K>() {
-            @Override
-            public boolean apply(K key) {
-                return key != null && (!currentFileMap.containsKey(key) || !currentFileMap.get(key).equals(getLoadedData().get(key)));
-            }
-        }))
-            currentFile.createSection(key.toString(), serialize(key));
-
-        // Remove old unneeded data.
-        for (K key : Collections2.filter(currentFileMap.keySet(), new Predicate<K>() {
-            @Override
-            public boolean apply(K key) {
-                return !getLoadedData().keySet().contains(key);
-            }
-        }))
-            currentFile.set(key.toString(), null);
+        // Nothing changed since the last successful save.
+        Map<K, Long> dirty = dataStore.getDirtyKeys();
+        if (dirty.isEmpty() && !format.needsSave()) return true;
 
         // Save the file!
-        return YamlFileUtil.saveFile(getDirectoryPath(), getFullFileName(), currentFile);
+        if (!format.save(this, dirty)) return false;
+
+        // Anything stamped again while saving stays dirty for the next run.
+        for (Map.Entry<K, Long> entry : dirty.entrySet())
+            dataStore.markClean(entry.getKey(), entry.getValue());
+        return true;
     }
 
     /**
@@ -16,15 +16,13 @@
 
 package com.censoredsoftware.infractions.bukkit.legacy.data.file;
 
-import com.censoredsoftware.infractions.bukkit.legacy.data.DataProvider;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataCodec;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataCodecs;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
 import com.censoredsoftware.infractions.bukkit.legacy.data.DataType;
 import com.censoredsoftware.infractions.bukkit.legacy.data.IdType;
 import org.bukkit.configuration.ConfigurationSection;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-
 /**
  * Factory for constructing DemigodsFiles in a safe and generic way.
  */
@@ -44,7 +42,19 @@ public class InfractionsFileFactory {
      * @return A new DemigodsFile object.
      */
     public static InfractionsFile create(DataType type, String filePath) {
-        return create(type.getIdType(), type.getDataClass(), type.getAbbreviation(), filePath, type.name());
+        return create(type, filePath, new YamlFileFormat());
+    }
+
+    /**
+     * Create a Demigods File from the DataType, file path, and file format.
+     *
+     * @param type     The DataType this file will be persisting.
+     * @param filePath The path to the file directory.
+     * @param format   The on-disk format of the file.
+     * @return A new DemigodsFile object.
+     */
+    public static InfractionsFile create(DataType type, String filePath, FileFormat format) {
+        return create(type.getIdType(), type.getDataClass(), type.getAbbreviation(), filePath, type.name(), format);
     }
 
     /**
@@ -54,49 +64,27 @@ public class InfractionsFileFactory {
      * @param dataClass The class this file will be persisting data for.
      * @param abbr      The abbreviation of the data type.
      * @param filePath  The path to the file directory.
+     * @param format    The on-disk format of the file.
      * @return A new DemigodsFile object.
      */
-    public static <K, V extends DataSerializable<K>, I> InfractionsFile<K, V, I> create(final IdType idType, final Class<V> dataClass, String abbr, String filePath, String name) {
+    public static <K, V extends DataSerializable<K>, I> InfractionsFile<K, V, I> create(final IdType idType, final Class<V> dataClass, String abbr, String filePath, String name, FileFormat format) {
         // Check for void type.
         if (IdType.VOID.equals(idType)) return null;
 
-        Method foundMethod = null;
-
-        try {
-            // Look over all constructors in the data class.
-            for (Method method : dataClass.getMethods()) {
-                // Attempt to find a registered constructor.
-                DataProvider methodConstructor = method.getAnnotation(DataProvider.class);
-
-                // Is the constructor suitable for use?
-                if (methodConstructor == null || !Modifier.isStatic(method.getModifiers()) || !idType.equals(methodConstructor.idType()))
-                    continue;
-
-                // So far so good, now we double check the params.
-                Class<?>[] params = method.getParameterTypes();
-                if (params.length < 2 || !params[0].equals(idType.getCastClass()) || !params[1].equals(ConfigurationSection.class))
-                    // No good.
-                    throw new RuntimeException("The defined constructor for " + dataClass.getName() + " is invalid.");
-
-                foundMethod = method;
-                break;
-            }
-        } catch (Exception ignored) {
-        }
-        if (foundMethod == null)
-            throw new RuntimeException("Infractions was unable to find a constructor for " + dataClass.getName() + ".");
+        // Codecs are registered up front, so decoding a record is a plain method call.
+        final DataCodec<K, V> codec = DataCodecs.get(dataClass);
+        if (codec == null)
+            throw new RuntimeException("Infractions was unable to find a codec for " + dataClass.getName() + ".");
 
-        // Construct a new Infractions File from the abbreviation, file extension, and file directory path.
-        return new InfractionsFile<K, V, I>(abbr, ".know", filePath, name, foundMethod) {
+        // Construct a new Infractions File from the abbreviation, file format, and file directory path.
+        return new InfractionsFile<K, V, I>(abbr, format, filePath, name, codec) {
             // Overridden method to create an new data object from the file data.
             @Override
             public I valueFromData(String stringId, ConfigurationSection conf) {
                 try {
-                    // Everything looks perfect so far. Last thing to do is construct a new instance.
-                    return (I) valueConstructor.invoke(null, keyFromString(stringId), conf);
+                    return (I) codec.decode(keyFromString(stringId), conf);
                 } catch (Exception e) {
                     e.printStackTrace();
-                    // throw new RuntimeException("Infractions can't manage it's own data for some reason.", e);
                     return null;
                 }
             }
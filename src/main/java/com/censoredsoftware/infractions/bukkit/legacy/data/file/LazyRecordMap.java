@@ -0,0 +1,310 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.file;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent map over records that stay on disk until they are asked for.
+ * <p/>
+ * Keys of stored records map to a {@link BinaryFileUtil.Pointer}. A record is decoded on first access and kept
+ * only weakly, so records nobody holds on to can be collected again. Records that are put, or marked dirty
+ * while decoded, are pinned in memory until they are clean again. Iterating decodes records one at a time.
+ *
+ * @param <K> The id type.
+ * @param <I> The stored type.
+ */
+class LazyRecordMap<K, I> extends AbstractMap<K, I> implements ConcurrentMap<K, I> {
+    private final ConcurrentMap<K, BinaryFileUtil.Pointer> pointers = Maps.newConcurrentMap();
+    private final ConcurrentMap<K, I> pinned = Maps.newConcurrentMap();
+    private final ConcurrentMap<K, I> decoded = new MapMaker().weakValues().makeMap();
+    private final Loader<K, I> loader;
+
+    /**
+     * Decodes a stored record.
+     */
+    interface Loader<K, I> {
+        /**
+         * @param key The key.
+         * @return The record, or null if it isn't stored or can't be decoded.
+         */
+        I load(K key);
+    }
+
+    LazyRecordMap(Loader<K, I> loader) {
+        this.loader = loader;
+    }
+
+    // -- STORAGE -- //
+
+    BinaryFileUtil.Pointer getPointer(K key) {
+        return pointers.get(key);
+    }
+
+    /**
+     * Point stored records at a new file.
+     *
+     * @param stored The positions of the stored records.
+     * @param load   True when loading, otherwise keys removed since the file was written are left out.
+     */
+    synchronized void setPointers(Map<K, BinaryFileUtil.Pointer> stored, boolean load) {
+        for (Map.Entry<K, BinaryFileUtil.Pointer> entry : stored.entrySet())
+            if (load || pinned.containsKey(entry.getKey()) || pointers.containsKey(entry.getKey()))
+                pointers.put(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Keep a decoded record in memory, since it has changes that aren't stored yet.
+     */
+    synchronized void pin(K key) {
+        I value = decoded.get(key);
+        if (value != null) pinned.putIfAbsent(key, value);
+    }
+
+    /**
+     * Let a record be collected again once it is stored and clean.
+     *
+     * @param dirty Whether the key still has unsaved changes.
+     */
+    synchronized void unpin(K key, Predicate<K> dirty) {
+        I value = pinned.get(key);
+        if (value == null || !pointers.containsKey(key) || dirty.apply(key)) return;
+        decoded.put(key, value);
+        pinned.remove(key);
+    }
+
+    /**
+     * @return The records that are decoded right now, without decoding any others.
+     */
+    synchronized Collection<I> resident() {
+        Map<K, I> resident = new HashMap<K, I>(decoded);
+        resident.putAll(pinned);
+        return resident.values();
+    }
+
+    // -- READS -- //
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public I get(Object key) {
+        I value = pinned.get(key);
+        if (value == null) value = decoded.get(key);
+        if (value != null || !pointers.containsKey(key)) return value;
+
+        value = loader.load((K) key);
+        if (value == null) return null;
+        I raced = decoded.putIfAbsent((K) key, value);
+        return raced != null ? raced : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return pinned.containsKey(key) || pointers.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        int size = pinned.size();
+        for (K key : pointers.keySet())
+            if (!pinned.containsKey(key)) size++;
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pinned.isEmpty() && pointers.isEmpty();
+    }
+
+    private Iterator<K> keyIterator() {
+        return Iterators.concat(pinned.keySet().iterator(), Iterators.filter(pointers.keySet().iterator(), new Predicate<K>() {
+            @Override
+            public boolean apply(K key) {
+                return !pinned.containsKey(key);
+            }
+        }));
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return new KeyIterator<K>(false) {
+                    @Override
+                    K next(K key, I value) {
+                        return key;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return LazyRecordMap.this.size();
+            }
+
+            @Override
+            public boolean contains(Object key) {
+                return containsKey(key);
+            }
+
+            @Override
+            public boolean remove(Object key) {
+                return LazyRecordMap.this.remove(key) != null;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<K, I>> entrySet() {
+        return new AbstractSet<Entry<K, I>>() {
+            @Override
+            public Iterator<Entry<K, I>> iterator() {
+                return new KeyIterator<Entry<K, I>>(true) {
+                    @Override
+                    Entry<K, I> next(K key, I value) {
+                        return Maps.immutableEntry(key, value);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return LazyRecordMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates the keys, skipping records that were removed or, when decoding, can't be decoded.
+     */
+    private abstract class KeyIterator<T> implements Iterator<T> {
+        private final Iterator<K> keys = keyIterator();
+        private final boolean decode;
+        private K next, last;
+        private I nextValue;
+
+        KeyIterator(boolean decode) {
+            this.decode = decode;
+        }
+
+        abstract T next(K key, I value);
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && keys.hasNext()) {
+                K key = keys.next();
+                if (!decode) next = key;
+                else if ((nextValue = get(key)) != null) next = key;
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = next;
+            next = null;
+            I value = nextValue;
+            nextValue = null;
+            return next(last, value);
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) throw new IllegalStateException();
+            LazyRecordMap.this.remove(last);
+            last = null;
+        }
+    }
+
+    // -- WRITES -- //
+
+    // Old values are looked up before taking the lock, decoding never happens while holding it.
+
+    @Override
+    public I put(K key, I value) {
+        I old = get(key);
+        synchronized (this) {
+            pinned.put(key, value);
+            decoded.remove(key);
+        }
+        return old;
+    }
+
+    @Override
+    public I putIfAbsent(K key, I value) {
+        synchronized (this) {
+            if (!containsKey(key)) {
+                pinned.put(key, value);
+                return null;
+            }
+        }
+        return get(key);
+    }
+
+    @Override
+    public I remove(Object key) {
+        I old = get(key);
+        synchronized (this) {
+            pinned.remove(key);
+            decoded.remove(key);
+            pointers.remove(key);
+        }
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (value == null || !value.equals(get(key))) return false;
+        synchronized (this) {
+            if (!value.equals(pinned.get(key)) && !value.equals(decoded.get(key))) return false;
+            pinned.remove(key);
+            decoded.remove(key);
+            pointers.remove(key);
+        }
+        return true;
+    }
+
+    @Override
+    public I replace(K key, I value) {
+        I old = get(key);
+        if (old == null) return null;
+        synchronized (this) {
+            if (!containsKey(key)) return null;
+            pinned.put(key, value);
+            decoded.remove(key);
+        }
+        return old;
+    }
+
+    @Override
+    public boolean replace(K key, I oldValue, I newValue) {
+        if (oldValue == null || !oldValue.equals(get(key))) return false;
+        synchronized (this) {
+            if (!oldValue.equals(pinned.get(key)) && !oldValue.equals(decoded.get(key))) return false;
+            pinned.put(key, newValue);
+            decoded.remove(key);
+        }
+        return true;
+    }
+}
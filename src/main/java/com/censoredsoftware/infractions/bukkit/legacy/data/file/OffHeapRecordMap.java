@@ -0,0 +1,542 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.file;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataType;
+import com.censoredsoftware.infractions.bukkit.legacy.data.TrackedDataMap;
+import com.censoredsoftware.infractions.bukkit.legacy.data.ValueStreams;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent map that keeps records encoded in direct memory, outside of the garbage collected heap.
+ * <p/>
+ * Records are stored in the binary record format in large direct buffers, found through an open addressing table
+ * of UUID halves. A record is decoded on access and kept only weakly, so records nobody holds on to can be
+ * collected again. Records that are put, or marked dirty while decoded, are pinned on the heap until they are
+ * saved, then encoded again. Iterating decodes records one at a time.
+ *
+ * @param <I> The stored type.
+ */
+class OffHeapRecordMap<I> extends AbstractMap<UUID, I> implements ConcurrentMap<UUID, I> {
+    private static final int SLAB_SIZE = 1 << 22;
+
+    // Field names and common values are encoded as dictionary codes.
+    private static final BinaryFileUtil.Header HEADER = new BinaryFileUtil.Header();
+
+    static {
+        for (String string : Arrays.asList("lastKnownName", "lastSeen", "confirmedValid", "infractions", "addresses"))
+            HEADER.add(string);
+    }
+
+    private final ConcurrentMap<UUID, I> pinned = Maps.newConcurrentMap();
+    private final ConcurrentMap<UUID, I> decoded = new MapMaker().weakValues().makeMap();
+    private final Codec<I> codec;
+
+    // Open addressing table, a slot is free while its length is 0. Guarded by this.
+    private long[] most = new long[16], least = new long[16], where = new long[16];
+    private int[] lengths = new int[16];
+    private int size;
+
+    // Append only buffers, compacted once most of their contents are stale. Guarded by this.
+    private final List<ByteBuffer> slabs = Lists.newArrayList();
+    private long used, garbage;
+
+    /**
+     * Turns records into bytes and back.
+     */
+    interface Codec<I> {
+        byte[] encode(I value) throws IOException;
+
+        /**
+         * @return The record, or null if it can't be decoded.
+         */
+        I decode(UUID key, byte[] bytes) throws IOException;
+    }
+
+    OffHeapRecordMap(Codec<I> codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @param name The data type name of a file.
+     * @return The file should keep its records in direct memory.
+     */
+    static boolean isEnabled(String name) {
+        return DataType.DOSSIER.name().equals(name) && InfractionsPlugin.getInst().getConfig().getBoolean("saving.off_heap_dossiers", false);
+    }
+
+    /**
+     * Create the data store of a file with UUID keys.
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V extends DataSerializable<K>, I> TrackedDataMap<K, I> createStore(final InfractionsFile<K, V, I> file) {
+        final OffHeapRecordMap<I> map = new OffHeapRecordMap<I>(new Codec<I>() {
+            @Override
+            public byte[] encode(I value) throws IOException {
+                return BinaryFileUtil.encodeRecord(file.encode(value), HEADER);
+            }
+
+            @Override
+            public I decode(UUID key, byte[] bytes) throws IOException {
+                return file.valueFromData(key.toString(), ValueStreams.toSection(BinaryFileUtil.decodeRecord(bytes, HEADER)));
+            }
+        });
+        return (TrackedDataMap<K, I>) new TrackedDataMap<UUID, I>(map) {
+            @Override
+            public void load(UUID key, I value) {
+                map.store(key, value);
+            }
+
+            @Override
+            public Collection<I> residentValues() {
+                return map.resident();
+            }
+
+            @Override
+            protected void onMarkDirty(UUID key) {
+                map.pin(key);
+            }
+
+            @Override
+            protected void onMarkClean(final UUID key) {
+                map.settle(key, new Predicate<UUID>() {
+                    @Override
+                    public boolean apply(UUID key) {
+                        return isDirty(key);
+                    }
+                });
+            }
+        };
+    }
+
+    // -- STORAGE -- //
+
+    /**
+     * Encode a record straight into direct memory, without keeping it on the heap.
+     */
+    void store(UUID key, I value) {
+        byte[] bytes = encode(key, value);
+        if (bytes == null) return;
+        synchronized (this) {
+            write(key, bytes);
+            decoded.remove(key);
+        }
+    }
+
+    /**
+     * Keep a decoded record on the heap, since it has changes that aren't stored yet.
+     */
+    synchronized void pin(UUID key) {
+        I value = decoded.get(key);
+        if (value != null) pinned.putIfAbsent(key, value);
+    }
+
+    /**
+     * Encode a pinned record again once it is saved, and let it be collected.
+     *
+     * @param dirty Whether the key still has unsaved changes.
+     */
+    void settle(UUID key, Predicate<UUID> dirty) {
+        I value = pinned.get(key);
+        if (value == null) return;
+        byte[] bytes = encode(key, value);
+        if (bytes == null) return;
+        synchronized (this) {
+            if (dirty.apply(key) || pinned.get(key) != value) return;
+            write(key, bytes);
+
+            // Stay reachable for whoever still holds the record, so it never has two copies.
+            decoded.put(key, value);
+            pinned.remove(key);
+        }
+    }
+
+    private byte[] encode(UUID key, I value) {
+        try {
+            return codec.encode(value);
+        } catch (Exception oops) {
+            InfractionsPlugin.getInst().getLogger().severe("Unable to encode " + key + " into direct memory: " + oops.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return The bytes of a stored record, or null.
+     */
+    private synchronized byte[] read(Object key) {
+        if (!(key instanceof UUID)) return null;
+        int slot = find((UUID) key);
+        if (lengths[slot] == 0) return null;
+        ByteBuffer slab = slabs.get((int) (where[slot] >>> 32)).duplicate();
+        slab.position((int) where[slot]);
+        byte[] bytes = new byte[lengths[slot]];
+        slab.get(bytes);
+        return bytes;
+    }
+
+    private void write(UUID key, byte[] bytes) {
+        int slot = find(key);
+        if (lengths[slot] != 0) garbage += lengths[slot];
+        else {
+            if ((size + 1) * 4 > most.length * 3) {
+                grow();
+                slot = find(key);
+            }
+            most[slot] = key.getMostSignificantBits();
+            least[slot] = key.getLeastSignificantBits();
+            size++;
+        }
+        where[slot] = append(bytes);
+        lengths[slot] = bytes.length;
+        if (garbage > SLAB_SIZE && garbage > used - garbage) compact();
+    }
+
+    private void erase(UUID key) {
+        int slot = find(key);
+        if (lengths[slot] == 0) return;
+        garbage += lengths[slot];
+        size--;
+
+        // Shift the rest of the run back, so lookups never stop at the gap.
+        int mask = most.length - 1;
+        for (int next = (slot + 1) & mask; lengths[next] != 0; next = (next + 1) & mask) {
+            int home = slot(most[next], least[next], most.length);
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                move(next, slot);
+                slot = next;
+            }
+        }
+        lengths[slot] = 0;
+    }
+
+    private long append(byte[] bytes) {
+        ByteBuffer slab = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+        if (slab == null || slab.remaining() < bytes.length) {
+            slab = ByteBuffer.allocateDirect(Math.max(SLAB_SIZE, bytes.length));
+            slabs.add(slab);
+        }
+        long position = (long) (slabs.size() - 1) << 32 | slab.position();
+        slab.put(bytes);
+        used += bytes.length;
+        return position;
+    }
+
+    /**
+     * Copy the live records into new buffers, dropping the old ones.
+     */
+    private void compact() {
+        List<ByteBuffer> old = Lists.newArrayList(slabs);
+        slabs.clear();
+        used = garbage = 0;
+        for (int slot = 0; slot < most.length; slot++) {
+            if (lengths[slot] == 0) continue;
+            ByteBuffer slab = old.get((int) (where[slot] >>> 32)).duplicate();
+            slab.position((int) where[slot]);
+            byte[] bytes = new byte[lengths[slot]];
+            slab.get(bytes);
+            where[slot] = append(bytes);
+        }
+    }
+
+    private int find(UUID key) {
+        long high = key.getMostSignificantBits(), low = key.getLeastSignificantBits();
+        int mask = most.length - 1;
+        int slot = slot(high, low, most.length);
+        while (lengths[slot] != 0 && (most[slot] != high || least[slot] != low))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldMost = most, oldLeast = least, oldWhere = where;
+        int[] oldLengths = lengths;
+        most = new long[oldMost.length << 1];
+        least = new long[most.length];
+        where = new long[most.length];
+        lengths = new int[most.length];
+        for (int slot = 0; slot < oldMost.length; slot++) {
+            if (oldLengths[slot] == 0) continue;
+            int to = slot(oldMost[slot], oldLeast[slot], most.length);
+            while (lengths[to] != 0)
+                to = (to + 1) & (most.length - 1);
+            most[to] = oldMost[slot];
+            least[to] = oldLeast[slot];
+            where[to] = oldWhere[slot];
+            lengths[to] = oldLengths[slot];
+        }
+    }
+
+    private void move(int from, int to) {
+        most[to] = most[from];
+        least[to] = least[from];
+        where[to] = where[from];
+        lengths[to] = lengths[from];
+    }
+
+    private static int slot(long high, long low, int length) {
+        long hash = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (length - 1);
+    }
+
+    private synchronized boolean isStored(Object key) {
+        return key instanceof UUID && lengths[find((UUID) key)] != 0;
+    }
+
+    private synchronized List<UUID> storedKeys() {
+        List<UUID> keys = Lists.newArrayListWithCapacity(size);
+        for (int slot = 0; slot < most.length; slot++)
+            if (lengths[slot] != 0) keys.add(new UUID(most[slot], least[slot]));
+        return keys;
+    }
+
+    /**
+     * @return The records that are decoded right now, without decoding any others.
+     */
+    synchronized Collection<I> resident() {
+        Map<UUID, I> resident = new HashMap<UUID, I>(decoded);
+        resident.putAll(pinned);
+        return resident.values();
+    }
+
+    // -- READS -- //
+
+    @Override
+    public I get(Object key) {
+        I value = pinned.get(key);
+        if (value == null) value = decoded.get(key);
+        if (value != null) return value;
+
+        byte[] bytes = read(key);
+        if (bytes == null) return null;
+        try {
+            value = codec.decode((UUID) key, bytes);
+        } catch (Exception oops) {
+            InfractionsPlugin.getInst().getLogger().severe("Unable to decode " + key + " from direct memory: " + oops.getMessage());
+            return null;
+        }
+        if (value == null) return null;
+        synchronized (this) {
+            // A put may have replaced the record while it was being decoded.
+            I current = pinned.get(key);
+            if (current == null) current = decoded.get(key);
+            if (current != null) return current;
+            if (!isStored(key)) return null;
+            decoded.put((UUID) key, value);
+            return value;
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return pinned.containsKey(key) || isStored(key);
+    }
+
+    @Override
+    public synchronized int size() {
+        int count = size;
+        for (UUID key : pinned.keySet())
+            if (!isStored(key)) count++;
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private Iterator<UUID> keyIterator() {
+        Set<UUID> keys = new LinkedHashSet<UUID>(pinned.keySet());
+        keys.addAll(storedKeys());
+        return keys.iterator();
+    }
+
+    @Override
+    public Set<UUID> keySet() {
+        return new AbstractSet<UUID>() {
+            @Override
+            public Iterator<UUID> iterator() {
+                return new KeyIterator<UUID>(false) {
+                    @Override
+                    UUID next(UUID key, I value) {
+                        return key;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return OffHeapRecordMap.this.size();
+            }
+
+            @Override
+            public boolean contains(Object key) {
+                return containsKey(key);
+            }
+
+            @Override
+            public boolean remove(Object key) {
+                return OffHeapRecordMap.this.remove(key) != null;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<UUID, I>> entrySet() {
+        return new AbstractSet<Entry<UUID, I>>() {
+            @Override
+            public Iterator<Entry<UUID, I>> iterator() {
+                return new KeyIterator<Entry<UUID, I>>(true) {
+                    @Override
+                    Entry<UUID, I> next(UUID key, I value) {
+                        return Maps.immutableEntry(key, value);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return OffHeapRecordMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates a snapshot of the keys, skipping records that were removed or, when decoding, can't be decoded.
+     */
+    private abstract class KeyIterator<T> implements Iterator<T> {
+        private final Iterator<UUID> keys = keyIterator();
+        private final boolean decode;
+        private UUID next, last;
+        private I nextValue;
+
+        KeyIterator(boolean decode) {
+            this.decode = decode;
+        }
+
+        abstract T next(UUID key, I value);
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && keys.hasNext()) {
+                UUID key = keys.next();
+                if (!decode) {
+                    if (containsKey(key)) next = key;
+                } else if ((nextValue = get(key)) != null) next = key;
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = next;
+            next = null;
+            I value = nextValue;
+            nextValue = null;
+            return next(last, value);
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) throw new IllegalStateException();
+            OffHeapRecordMap.this.remove(last);
+            last = null;
+        }
+    }
+
+    // -- WRITES -- //
+
+    // Old values are looked up before taking the lock, decoding never happens while holding it.
+
+    @Override
+    public I put(UUID key, I value) {
+        I old = get(key);
+        synchronized (this) {
+            pinned.put(key, value);
+            decoded.remove(key);
+        }
+        return old;
+    }
+
+    @Override
+    public I putIfAbsent(UUID key, I value) {
+        synchronized (this) {
+            if (!containsKey(key)) {
+                pinned.put(key, value);
+                return null;
+            }
+        }
+        return get(key);
+    }
+
+    @Override
+    public I remove(Object key) {
+        I old = get(key);
+        synchronized (this) {
+            pinned.remove(key);
+            decoded.remove(key);
+            if (key instanceof UUID) erase((UUID) key);
+        }
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (value == null || !value.equals(get(key))) return false;
+        synchronized (this) {
+            if (!value.equals(pinned.get(key)) && !value.equals(decoded.get(key))) return false;
+            pinned.remove(key);
+            decoded.remove(key);
+            erase((UUID) key);
+        }
+        return true;
+    }
+
+    @Override
+    public I replace(UUID key, I value) {
+        I old = get(key);
+        if (old == null) return null;
+        synchronized (this) {
+            if (!containsKey(key)) return null;
+            pinned.put(key, value);
+            decoded.remove(key);
+        }
+        return old;
+    }
+
+    @Override
+    public boolean replace(UUID key, I oldValue, I newValue) {
+        if (oldValue == null || !oldValue.equals(get(key))) return false;
+        synchronized (this) {
+            if (!oldValue.equals(pinned.get(key)) && !oldValue.equals(decoded.get(key))) return false;
+            pinned.put(key, newValue);
+            decoded.remove(key);
+        }
+        return true;
+    }
+}
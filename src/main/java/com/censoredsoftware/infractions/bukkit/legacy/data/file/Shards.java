@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.file;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * How the files of each data type are split into shards, keyed by a hash of the record id.
+ * <p/>
+ * A single shard uses the classic file name ("dos.know"), N shards use "dos.0of8.know" through "dos.7of8.know".
+ * Layouts never share file names, so a layout is only replaced once the next one is completely written.
+ * Changing the shard count takes effect on the next save of each file.
+ */
+public class Shards {
+    /**
+     * A single shard, handled on the calling thread.
+     */
+    public static final Shards NONE = new Shards(1, (ExecutorService) null);
+
+    private volatile int count;
+    private final ExecutorService pool;
+
+    /**
+     * @param count The number of shards per data type.
+     * @param name  The name of the threads shards are loaded and saved on.
+     */
+    public Shards(int count, final String name) {
+        this(count, Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+
+    private Shards(int count, ExecutorService pool) {
+        this.count = Math.max(1, count);
+        this.pool = pool;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Change the number of shards. Each file is resharded on its next save, while it stays available.
+     *
+     * @param count The new number of shards.
+     */
+    public void setCount(int count) {
+        this.count = Math.max(1, count);
+    }
+
+    /**
+     * Stop the shard threads, once nothing is loaded or saved anymore.
+     */
+    public void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    /**
+     * A task to run for a single shard.
+     */
+    public interface Task {
+        void run(int shard) throws Exception;
+    }
+
+    /**
+     * Run a task for each shard, concurrently, and wait for all of them.
+     *
+     * @param shards The shard numbers.
+     * @param task   The task.
+     * @throws Exception The first failure, after every task has finished.
+     */
+    public void forEach(Collection<Integer> shards, final Task task) throws Exception {
+        if (pool == null || shards.size() < 2) {
+            for (int shard : shards)
+                task.run(shard);
+            return;
+        }
+
+        List<Future<?>> futures = Lists.newArrayList();
+        for (final int shard : shards)
+            futures.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    task.run(shard);
+                    return null;
+                }
+            }));
+        Exception failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException errored) {
+                if (failure == null)
+                    failure = errored.getCause() instanceof Exception ? (Exception) errored.getCause() : errored;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    // -- LAYOUT -- //
+
+    /**
+     * @return The shard a record belongs to.
+     */
+    public static int of(Object key, int count) {
+        return count <= 1 ? 0 : (key.hashCode() & Integer.MAX_VALUE) % count;
+    }
+
+    /**
+     * @return Every shard number of a layout.
+     */
+    public static List<Integer> all(int count) {
+        List<Integer> shards = Lists.newArrayList();
+        for (int i = 0; i < count; i++)
+            shards.add(i);
+        return shards;
+    }
+
+    /**
+     * @return The file name of a shard.
+     */
+    public static String fileName(String name, String extension, int shard, int count) {
+        if (count <= 1) return name + extension;
+        return name + "." + shard + "of" + count + extension;
+    }
+
+    /**
+     * Find the layout stored on disk. If more than one complete layout is found, the newest one wins.
+     *
+     * @param path      The file directory path.
+     * @param name      The file name, without extension.
+     * @param extension The file extension.
+     * @return The number of shards, or 0 if there are no files.
+     */
+    public static int detect(String path, String name, String extension) {
+        File[] files = new File(path).listFiles();
+        if (files == null) return 0;
+
+        // Shard count -> shards found, and the oldest modification time among them.
+        Map<Integer, Set<Integer>> found = Maps.newHashMap();
+        Map<Integer, Long> modified = Maps.newHashMap();
+        for (File file : files) {
+            int[] shard = parse(file.getName(), name, extension);
+            if (shard == null) continue;
+            if (!found.containsKey(shard[1])) {
+                found.put(shard[1], new HashSet<Integer>());
+                modified.put(shard[1], Long.MAX_VALUE);
+            }
+            found.get(shard[1]).add(shard[0]);
+            modified.put(shard[1], Math.min(modified.get(shard[1]), file.lastModified()));
+        }
+
+        int best = 0;
+        for (Map.Entry<Integer, Set<Integer>> entry : found.entrySet()) {
+            if (entry.getValue().size() != entry.getKey()) continue;
+            if (best == 0 || modified.get(entry.getKey()) > modified.get(best)) best = entry.getKey();
+        }
+        return best;
+    }
+
+    /**
+     * Delete every shard file of a data type that doesn't belong to the given layout.
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public static void deleteOthers(String path, String name, String extension, int count) {
+        File[] files = new File(path).listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            int[] shard = parse(file.getName(), name, extension);
+            if (shard != null && shard[1] != count) file.delete();
+        }
+    }
+
+    /**
+     * @return The shard number and count of a file name, or null if it isn't a file of this data type.
+     */
+    private static int[] parse(String fileName, String name, String extension) {
+        if (fileName.equals(name + extension)) return new int[]{0, 1};
+        if (!fileName.startsWith(name + ".") || !fileName.endsWith(extension)) return null;
+        String shard = fileName.substring(name.length() + 1, fileName.length() - extension.length());
+        int of = shard.indexOf("of");
+        if (of < 1) return null;
+        try {
+            int number = Integer.parseInt(shard.substring(0, of));
+            int count = Integer.parseInt(shard.substring(of + 2));
+            if (count < 2 || number < 0 || number >= count) return null;
+            return new int[]{number, count};
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Find the layout of a data type, converting it from the other format first if only that one exists.
+     *
+     * @param file   The InfractionsFile.
+     * @param format The format it is stored in.
+     * @return The number of shards stored, or 0 if there are no files.
+     * @throws Exception If the conversion fails.
+     */
+    static int prepare(InfractionsFile<?, ?, ?> file, FileFormat format) throws Exception {
+        String path = file.getDirectoryPath(), name = file.getFileName();
+        int stored = detect(path, name, format.getExtension());
+        if (stored > 0) return stored;
+
+        // Bring over data saved in the other format.
+        stored = detect(path, name, format.getOtherExtension());
+        for (int shard = 0; shard < stored; shard++) {
+            String from = fileName(name, format.getOtherExtension(), shard, stored);
+            String to = fileName(name, format.getExtension(), shard, stored);
+            InfractionsPlugin.getInst().getLogger().info("Converting \"" + from + "\" into \"" + to + "\".");
+            format.convert(path, from, to);
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.file;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataSerializable;
+import com.censoredsoftware.infractions.bukkit.legacy.data.TrackedDataMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The original YAML ".know" format, read and written one record at a time through {@link YamlStream}.
+ * <p/>
+ * Saves copy the text of clean records straight from the old file, so only dirty records are serialized.
+ */
+public class YamlFileFormat implements FileFormat {
+    private final Shards shards;
+
+    // The number of shards on disk, 0 before anything was saved.
+    private volatile int stored;
+
+    public YamlFileFormat() {
+        this(Shards.NONE);
+    }
+
+    /**
+     * @param shards How the file is split.
+     */
+    public YamlFileFormat(Shards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".know";
+    }
+
+    @Override
+    public String getOtherExtension() {
+        return ".kbin";
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> TrackedDataMap<K, I> createDataStore(InfractionsFile<K, V, I> file) {
+        return new TrackedDataMap<K, I>();
+    }
+
+    private File shardFile(InfractionsFile<?, ?, ?> file, int shard, int count) {
+        return new File(file.getDirectoryPath() + Shards.fileName(file.getFileName(), getExtension(), shard, count));
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> void load(final InfractionsFile<K, V, I> file) throws Exception {
+        final int found = Shards.prepare(file, this);
+        shards.forEach(Shards.all(found), new Shards.Task() {
+            @Override
+            public void run(int shard) throws IOException {
+                YamlStream.Reader reader = new YamlStream.Reader(shardFile(file, shard, found));
+                try {
+                    YamlStream.Record record;
+                    while ((record = reader.next()) != null) {
+                        ConfigurationSection section = reader.read(record);
+                        if (section != null) file.loadRecord(record.key, section);
+                        else
+                            InfractionsPlugin.getInst().getLogger().warning("Corrupt: " + record.key + ", in file: " + file.getFullFileName());
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        });
+        stored = found;
+    }
+
+    @Override
+    public boolean needsSave() {
+        return stored != shards.getCount();
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> boolean save(final InfractionsFile<K, V, I> file, final Map<K, Long> dirty) {
+        final int from = stored, count = shards.getCount();
+        try {
+            if (from != count) {
+                if (from > 0)
+                    InfractionsPlugin.getInst().getLogger().info("Splitting \"" + file.getFullFileName() + "\" into " + count + " shard(s).");
+                rewrite(file, dirty, Shards.all(from), from, Shards.all(count), count);
+                Shards.deleteOthers(file.getDirectoryPath(), file.getFileName(), getExtension(), count);
+                stored = count;
+                return true;
+            }
+
+            // Only rewrite the shards with dirty records in them.
+            Set<Integer> touched = new TreeSet<Integer>();
+            for (K key : dirty.keySet())
+                touched.add(Shards.of(key, count));
+            shards.forEach(touched, new Shards.Task() {
+                @Override
+                public void run(int shard) throws IOException {
+                    rewrite(file, dirty, Collections.singleton(shard), count, Collections.singleton(shard), count);
+                }
+            });
+            return true;
+        } catch (Exception oops) {
+            InfractionsPlugin.getInst().getLogger().severe("Unable to save \"" + file.getFullFileName() + "\": " + oops.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stream the records of some shards into new files, replacing dirty records on the way.
+     *
+     * @param file    The InfractionsFile.
+     * @param dirty   The dirty keys.
+     * @param sources The shards to read.
+     * @param from    The number of shards read from.
+     * @param targets The shards to write, every record read has to belong to one of them.
+     * @param count   The number of shards written to.
+     * @throws IOException If a file can't be read or written.
+     */
+    private <K, V extends DataSerializable<K>, I> void rewrite(InfractionsFile<K, V, I> file, Map<K, Long> dirty, Collection<Integer> sources, int from, Collection<Integer> targets, int count) throws IOException {
+        Map<Integer, YamlStream.Writer> writers = Maps.newHashMap();
+        try {
+            for (int shard : targets)
+                writers.put(shard, new YamlStream.Writer(shardFile(file, shard, count)));
+
+            Set<K> written = Sets.newHashSet();
+            for (int shard : sources) {
+                YamlStream.Reader reader = new YamlStream.Reader(shardFile(file, shard, from));
+                try {
+                    YamlStream.Record record;
+                    while ((record = reader.next()) != null) {
+                        K key = keyOf(file, record.key);
+
+                        // Keep what can't be read, so it can still be fixed by hand.
+                        if (key == null) {
+                            writers.get(from == count ? shard : 0).copy(record);
+                            continue;
+                        }
+
+                        // Clean records are copied as they are.
+                        YamlStream.Writer writer = writers.get(Shards.of(key, count));
+                        if (!dirty.containsKey(key)) writer.copy(record);
+                        else if (written.add(key)) write(file, writer, key);
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+
+            // Then the records that weren't stored yet.
+            for (K key : dirty.keySet())
+                if (writers.containsKey(Shards.of(key, count)) && written.add(key))
+                    write(file, writers.get(Shards.of(key, count)), key);
+
+            for (YamlStream.Writer writer : writers.values())
+                writer.commit();
+        } catch (IOException oops) {
+            for (YamlStream.Writer writer : writers.values())
+                writer.abort();
+            throw oops;
+        }
+    }
+
+    private <K, V extends DataSerializable<K>, I> void write(InfractionsFile<K, V, I> file, YamlStream.Writer writer, K key) throws IOException {
+        I value = file.getLoadedData().get(key);
+        if (value != null) writer.write(key.toString(), file.encode(value));
+    }
+
+    private static <K> K keyOf(InfractionsFile<K, ?, ?> file, String stringId) {
+        if (stringId == null) return null;
+        try {
+            return file.keyFromString(stringId);
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    @Override
+    public void convert(String path, String from, String to) throws Exception {
+        BinaryFileUtil.binaryToYaml(new File(path + from), new File(path + to));
+    }
+}
@@ -16,10 +16,14 @@
 
 package com.censoredsoftware.infractions.bukkit.legacy.data.file;
 
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.AtomicFile;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * Package private utility for common file related methods.
@@ -45,6 +49,17 @@ public class YamlFileUtil {
         return YamlConfiguration.loadConfiguration(dataFile);
     }
 
+    /**
+     * Check if a file exists.
+     *
+     * @param path     The file directory path.
+     * @param fileName The file name.
+     * @return The file exists.
+     */
+    public static boolean exists(String path, String fileName) {
+        return new File(path + fileName).exists();
+    }
+
     /**
      * Create a new file.
      *
@@ -64,7 +79,7 @@ public class YamlFileUtil {
     }
 
     /**
-     * Save the file.
+     * Save the file, replacing the old one only once the new one is complete.
      *
      * @param path     The file directory path.
      * @param fileName The file name.
@@ -72,11 +87,18 @@ public class YamlFileUtil {
      * @return Saved successfully.
      */
     public static boolean saveFile(String path, String fileName, FileConfiguration conf) {
+        AtomicFile file = null;
         try {
-            conf.save(path + fileName);
+            file = new AtomicFile(new File(path + fileName));
+            Writer out = new OutputStreamWriter(file.getStream(), YamlStream.charset());
+            out.write(conf.saveToString());
+            out.flush();
+            file.commit();
             return true;
-        } catch (Exception ignored) {
+        } catch (Exception errored) {
+            InfractionsPlugin.getInst().getLogger().severe("Unable to save \"" + fileName + "\": " + errored.getMessage());
+            if (file != null) file.abort();
+            return false;
         }
-        return false;
     }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.file;
+
+import com.censoredsoftware.infractions.bukkit.legacy.data.AtomicFile;
+import com.google.common.collect.Lists;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and writes ".know" files one record at a time, so memory use doesn't grow with the size of the file.
+ * <p/>
+ * Every record is still parsed and dumped by Bukkit's YamlConfiguration, so the files look exactly as before. This
+ * relies on the layout it saves: each record starts with its id at the start of a line, and everything belonging
+ * to the record is indented below it.
+ */
+public class YamlStream {
+    private static final Pattern UUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    /**
+     * Private constructor.
+     */
+    private YamlStream() {
+    }
+
+    /**
+     * @return The charset Bukkit uses for configuration files.
+     */
+    static Charset charset() {
+        Charset charset = Charset.defaultCharset();
+        return "US-ASCII".equals(charset.name()) ? Charset.forName("UTF-8") : charset;
+    }
+
+    /**
+     * A single record, as text.
+     */
+    static class Record {
+        final String key;
+        final String text;
+
+        /**
+         * @param key  The record id, or null if the text can't be parsed.
+         * @param text The text of the record, ending with a line break.
+         */
+        Record(String key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Reads the records of a file in order.
+     */
+    static class Reader {
+        private final BufferedReader in;
+        private final YamlConfiguration scratch = new YamlConfiguration();
+        private final LinkedList<Record> parsed = Lists.newLinkedList();
+        private String next;
+
+        /**
+         * @param file The file, which doesn't have to exist.
+         * @throws IOException If the file can't be opened.
+         */
+        Reader(File file) throws IOException {
+            in = file.exists() ? new BufferedReader(new InputStreamReader(new FileInputStream(file), charset())) : null;
+        }
+
+        /**
+         * @return The next record, or null at the end of the file.
+         * @throws IOException If the file can't be read.
+         */
+        Record next() throws IOException {
+            if (!parsed.isEmpty()) return parsed.poll();
+            if (in == null) return null;
+
+            // Skip anything in front of the first record.
+            while (next == null || !isRecordStart(next)) {
+                next = in.readLine();
+                if (next == null) return null;
+            }
+
+            // The record ends where the next one starts.
+            String first = next;
+            StringBuilder text = new StringBuilder(first).append('\n');
+            while ((next = in.readLine()) != null && !isRecordStart(next))
+                text.append(next).append('\n');
+
+            String key = keyOf(first);
+            if (key != null) return new Record(key, text.toString());
+
+            // Anything not laid out as expected, like a record on a single line, is parsed here and now.
+            try {
+                load(text.toString());
+                for (String found : scratch.getKeys(false))
+                    parsed.add(new Record(found, toText(found, scratch.get(found))));
+            } catch (InvalidConfigurationException corrupt) {
+                return new Record(null, text.toString());
+            }
+            return parsed.isEmpty() ? next() : parsed.poll();
+        }
+
+        /**
+         * Parse a record.
+         *
+         * @param record The record.
+         * @return The parsed record, or null if it is corrupt.
+         */
+        ConfigurationSection read(Record record) {
+            if (record.key == null) return null;
+            try {
+                load(record.text);
+                return scratch.getConfigurationSection(record.key);
+            } catch (InvalidConfigurationException corrupt) {
+                return null;
+            }
+        }
+
+        private String keyOf(String line) {
+            if (!line.endsWith(":")) return null;
+            String key = line.substring(0, line.length() - 1);
+            if (UUID.matcher(key).matches()) return key;
+
+            // Let YAML deal with quoting.
+            try {
+                load(line + " 0");
+            } catch (InvalidConfigurationException ignored) {
+                return null;
+            }
+            return scratch.getKeys(false).size() == 1 ? scratch.getKeys(false).iterator().next() : null;
+        }
+
+        private void load(String text) throws InvalidConfigurationException {
+            for (String key : scratch.getKeys(false))
+                scratch.set(key, null);
+            scratch.loadFromString(text);
+        }
+
+        void close() {
+            if (in == null) return;
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static boolean isRecordStart(String line) {
+        if (line.isEmpty() || Character.isWhitespace(line.charAt(0))) return false;
+        char first = line.charAt(0);
+        return first != '#' && first != '-' && !line.startsWith("...");
+    }
+
+    private static String toText(String key, Object values) {
+        YamlConfiguration conf = new YamlConfiguration();
+        if (values instanceof Map) conf.createSection(key, (Map<?, ?>) values);
+        else conf.set(key, values);
+        return conf.saveToString();
+    }
+
+    /**
+     * Writes a file record by record, replacing the old file once it is complete.
+     */
+    static class Writer {
+        private final AtomicFile file;
+        private final java.io.Writer out;
+
+        Writer(File file) throws IOException {
+            this.file = new AtomicFile(file);
+            out = new BufferedWriter(new OutputStreamWriter(this.file.getStream(), charset()));
+        }
+
+        /**
+         * Serialize and write a record.
+         */
+        void write(String key, Map<String, Object> values) throws IOException {
+            out.write(toText(key, values));
+        }
+
+        /**
+         * Write a record as it was read.
+         */
+        void copy(Record record) throws IOException {
+            out.write(record.text);
+        }
+
+        /**
+         * Replace the file with everything written so far.
+         */
+        void commit() throws IOException {
+            out.flush();
+            file.commit();
+        }
+
+        void abort() {
+            file.abort();
+        }
+    }
+}
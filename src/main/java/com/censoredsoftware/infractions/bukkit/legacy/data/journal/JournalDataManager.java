@@ -0,0 +1,441 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.journal;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.*;
+import com.censoredsoftware.infractions.bukkit.legacy.data.file.FileDataManager;
+import com.censoredsoftware.infractions.bukkit.legacy.data.file.InfractionsFile;
+import com.censoredsoftware.infractions.bukkit.legacy.data.file.InfractionsFileFactory;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal save method.
+ * <p/>
+ * Every change to the data maps is appended to the current log segment shortly after it happens, so a save
+ * costs O(changes) instead of O(data). Startup replays the latest snapshot followed by the segments written
+ * after it. A background compaction folds the segments into a new snapshot while the log keeps growing.
+ */
+@SuppressWarnings("unchecked")
+public class JournalDataManager extends DataManager {
+    // -- VARIABLES -- //
+
+    // Data Folder
+    public static final String SAVE_PATH = InfractionsPlugin.getInst().getDataFolder() + "/journal/"; // Don't change this.
+
+    private static final Logger LOG = InfractionsPlugin.getInst().getLogger();
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    // -- DATA -- //
+
+    private ConcurrentMap<Class, InfractionsFile> dataFiles;
+    private final File directory = new File(SAVE_PATH);
+
+    // Guards the current segment.
+    private final Object lock = new Object();
+    private JournalSegment segment;
+
+    private ScheduledExecutorService executor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private long compactBytes;
+
+    // Prevent accidental double init.
+    private boolean didInit = false;
+
+    @Override
+    protected void init() {
+        // Check if init has happened already...
+        if (didInit) throw new RuntimeException("Data tried to initialize more than once.");
+
+        // Create the in-memory stores.
+        dataFiles = Maps.newConcurrentMap();
+        for (DataType dataType : DataType.values()) {
+            InfractionsFile file = InfractionsFileFactory.create(dataType, SAVE_PATH);
+            if (file == null) continue;
+            dataFiles.put(dataType.getDataClass(), file);
+        }
+
+        // Replay the snapshot and the log tail.
+        if (!directory.exists() && !directory.mkdirs())
+            throw new RuntimeException("Infractions couldn't create the journal directory.");
+        boolean fresh = listIds("snapshot-", ".snap").isEmpty() && listIds("segment-", ".log").isEmpty();
+        long nextSegment;
+        try {
+            nextSegment = replay();
+        } catch (IOException errored) {
+            throw new RuntimeException("Infractions couldn't replay its journal.", errored);
+        }
+
+        // A new journal starts from the data saved by the file methods, if there is any.
+        if (fresh) importFiles();
+
+        // Never append to a segment that might end in a torn frame, start a fresh one instead.
+        try {
+            segment = new JournalSegment(nextSegment, segmentFile(nextSegment));
+        } catch (IOException errored) {
+            throw new RuntimeException("Infractions couldn't open a journal segment.", errored);
+        }
+
+        // Background flushing and compaction.
+        long flushMillis = InfractionsPlugin.getInst().getConfig().getLong("saving.journal.flush_interval_millis", 1000);
+        long compactMinutes = InfractionsPlugin.getInst().getConfig().getLong("saving.journal.compact_interval_minutes", 60);
+        compactBytes = InfractionsPlugin.getInst().getConfig().getLong("saving.journal.compact_at_megabytes", 8) * 1024 * 1024;
+        if (flushMillis <= 0) flushMillis = 1000;
+        if (compactMinutes <= 0) compactMinutes = 60;
+
+        executor = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Infractions Journal");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        }, compactMinutes, compactMinutes, TimeUnit.MINUTES);
+
+        // Write anything imported right away.
+        if (fresh) flush();
+
+        // Let the plugin know that this has finished.
+        didInit = true;
+    }
+
+    @Override
+    protected void save() {
+        // Make sure data actually is loaded.
+        if (!didInit) return;
+
+        flush();
+    }
+
+    @Override
+    protected void close() {
+        if (!didInit) return;
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+        flush();
+        synchronized (lock) {
+            try {
+                segment.close();
+            } catch (IOException errored) {
+                LOG.severe("Unable to close journal segment: " + errored.getMessage());
+            }
+        }
+    }
+
+    @Override
+    protected void flushData() {
+        // Make sure data actually is loaded.
+        if (!didInit) return;
+
+        // Kick everyone
+        for (Player player : Bukkit.getOnlinePlayers())
+            player.kickPlayer(ChatColor.GREEN + "Resetting data.");
+
+        // Clear the data
+        for (InfractionsFile data : dataFiles.values())
+            data.clear();
+        TempDataManager.purge();
+
+        save();
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> I getFor(final Class<V> clazz, final K key) {
+        if (getFile(clazz).containsKey(key)) return (I) getFile(clazz).get(key);
+        return null;
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> Collection<I> getAllOf(final Class<V> clazz) {
+        return (Collection<I>) getFile(clazz).values();
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> ConcurrentMap<K, I> getMapFor(final Class<V> clazz) {
+        return (ConcurrentMap<K, I>) getFile(clazz).getLoadedData();
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>> void markDirty(final Class<V> clazz, final K key) {
+        getFile(clazz).markDirty(key);
+    }
+
+    private <K, V extends DataSerializable<K>, I> InfractionsFile<K, V, I> getFile(Class<V> clazz) {
+        if (dataFiles.containsKey(clazz)) return (InfractionsFile<K, V, I>) dataFiles.get(clazz);
+        throw new UnsupportedOperationException("Infractions wants a data type that does not exist.");
+    }
+
+    // -- LOG -- //
+
+    /**
+     * Append every dirty record to the current segment and sync it to disk.
+     */
+    private void flush() {
+        synchronized (lock) {
+            if (segment == null) return;
+
+            List<Object[]> written = Lists.newArrayList();
+            try {
+                // Dependents first, serializing them can register new issuers to write in the same flush.
+                for (DataType type : DataTypeExecutor.saveOrder()) {
+                    InfractionsFile file = dataFiles.get(type.getDataClass());
+                    if (file == null) continue;
+                    TrackedDataMap map = file.getLoadedData();
+                    for (Map.Entry<Object, Long> entry : ((Map<Object, Long>) map.getDirtyKeys()).entrySet()) {
+                        byte[] frame = encode(type, entry.getKey(), map.get(entry.getKey()));
+                        if (frame == null) continue;
+                        segment.append(frame);
+                        written.add(new Object[]{map, entry.getKey(), entry.getValue()});
+                    }
+                }
+                if (written.isEmpty()) return;
+                segment.sync();
+            } catch (IOException errored) {
+                LOG.severe("Unable to write to the journal: " + errored.getMessage());
+                return;
+            }
+
+            // Only what actually reached the disk is clean.
+            for (Object[] entry : written)
+                ((TrackedDataMap) entry[0]).markClean(entry[1], (Long) entry[2]);
+
+            if (segment.size() >= compactBytes && !executor.isShutdown()) executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compact();
+                }
+            });
+        }
+    }
+
+    private byte[] encode(DataType type, Object key, Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(value == null ? REMOVE : PUT);
+            ValueStreams.writeString(out, type.getAbbreviation());
+            ValueStreams.writeString(out, key.toString());
+            if (value != null) ValueStreams.writeMap(out, ((DataSerializable) value).serialize());
+            out.flush();
+            return bytes.toByteArray();
+        } catch (Exception errored) {
+            LOG.warning("Unable to journal " + type.name() + " \"" + key + "\": " + errored.getMessage());
+            return null;
+        }
+    }
+
+    // -- COMPACTION -- //
+
+    /**
+     * Fold the log into a new snapshot. Writers keep appending to a fresh segment in the meantime.
+     */
+    private void compact() {
+        if (!compacting.compareAndSet(false, true)) return;
+        try {
+            // Start a new segment, everything before it will be covered by the snapshot.
+            long snapshotId;
+            synchronized (lock) {
+                if (segment == null || segment.size() <= 8 && listIds("segment-", ".log").size() <= 1) return;
+                segment.close();
+                snapshotId = segment.getId() + 1;
+                segment = new JournalSegment(snapshotId, segmentFile(snapshotId));
+            }
+
+            // Write the snapshot next to the old one, and only swap it in once complete.
+            AtomicFile snapshot = new AtomicFile(snapshotFile(snapshotId));
+            DataOutputStream out = new DataOutputStream(snapshot.getStream());
+            try {
+                out.writeInt(JournalSegment.MAGIC);
+                out.writeInt(JournalSegment.VERSION);
+                for (DataType type : DataType.values()) {
+                    InfractionsFile file = dataFiles.get(type.getDataClass());
+                    if (file == null) continue;
+                    for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) file.getLoadedData()).entrySet()) {
+                        byte[] frame = encode(type, entry.getKey(), entry.getValue());
+                        if (frame != null) JournalSegment.writeFrame(out, frame);
+                    }
+                }
+                out.flush();
+                snapshot.commit();
+            } finally {
+                snapshot.abort();
+            }
+
+            // The snapshot replaces everything older than it.
+            for (Long id : listIds("snapshot-", ".snap"))
+                if (id < snapshotId) snapshotFile(id).delete();
+            for (Long id : listIds("segment-", ".log"))
+                if (id < snapshotId) segmentFile(id).delete();
+
+            LOG.info("Journal compacted into snapshot " + snapshotId + ".");
+        } catch (IOException errored) {
+            LOG.severe("Journal compaction failed: " + errored.getMessage());
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    // -- REPLAY -- //
+
+    /**
+     * Load the latest snapshot and every segment written after it.
+     *
+     * @return The number of the next segment.
+     * @throws IOException If a file can't be read.
+     */
+    private long replay() throws IOException {
+        // Latest state of every record, null for removed ones.
+        final Map<String, Map<String, Map<String, Object>>> state = Maps.newHashMap();
+        for (DataType type : DataType.values())
+            state.put(type.getAbbreviation(), new LinkedHashMap<String, Map<String, Object>>());
+
+        JournalSegment.FrameHandler handler = new JournalSegment.FrameHandler() {
+            @Override
+            public void handle(DataInput frame) throws IOException {
+                byte op = frame.readByte();
+                Map<String, Map<String, Object>> records = state.get(ValueStreams.readString(frame));
+                String key = ValueStreams.readString(frame);
+                if (records == null) return;
+                records.remove(key);
+                records.put(key, op == PUT ? ValueStreams.readMap(frame) : null);
+            }
+        };
+
+        List<Long> snapshots = listIds("snapshot-", ".snap");
+        long start = 0;
+        if (!snapshots.isEmpty()) {
+            start = snapshots.get(snapshots.size() - 1);
+            if (!JournalSegment.readFrames(snapshotFile(start), handler))
+                LOG.severe("Journal snapshot " + start + " is damaged, some data may be missing.");
+        }
+        long next = start;
+        for (Long id : listIds("segment-", ".log")) {
+            next = Math.max(next, id + 1);
+            if (id < start || segmentFile(id).length() < 8) continue;
+            if (!JournalSegment.readFrames(segmentFile(id), handler))
+                LOG.warning("Journal segment " + id + " ends in an incomplete write, it was cut short by a crash.");
+        }
+
+        // Decode in dependency order, so issuers exist before the infractions that reference them.
+        for (DataType type : DataTypeExecutor.loadOrder()) {
+            InfractionsFile file = dataFiles.get(type.getDataClass());
+            if (file == null) continue;
+            int count = 0;
+            for (Map.Entry<String, Map<String, Object>> entry : state.get(type.getAbbreviation()).entrySet()) {
+                if (entry.getValue() == null) continue;
+                try {
+                    ConfigurationSection section = ValueStreams.toSection(entry.getValue());
+                    Object value = file.valueFromData(entry.getKey(), section);
+                    if (value == null) {
+                        LOG.warning("Corrupt: " + entry.getKey() + ", in journal for " + type.name() + ".");
+                        continue;
+                    }
+                    file.getLoadedData().load(file.keyFromString(entry.getKey()), value);
+                    count++;
+                } catch (Exception errored) {
+                    errored.printStackTrace();
+                }
+            }
+            LOG.info("Replayed " + count + " " + type.name() + " records from the journal.");
+        }
+        return Math.max(next, 1);
+    }
+
+    // -- IMPORT -- //
+
+    /**
+     * Copy the records saved by the file and binary methods into the new journal, marking them dirty.
+     */
+    private void importFiles() {
+        for (DataType type : DataTypeExecutor.loadOrder()) {
+            InfractionsFile file = dataFiles.get(type.getDataClass());
+            if (file == null) continue;
+            InfractionsFile saved = InfractionsFileFactory.create(type, FileDataManager.SAVE_PATH);
+            try {
+                saved.loadDataFromFile();
+            } catch (Exception errored) {
+                throw new RuntimeException("Infractions couldn't import \"" + saved.getName() + "\" into the journal.", errored);
+            }
+            Map<Object, Object> records = (Map<Object, Object>) saved.getLoadedData();
+            for (Map.Entry<Object, Object> entry : records.entrySet())
+                file.put(entry.getKey(), entry.getValue());
+            if (!records.isEmpty())
+                LOG.info("Imported " + records.size() + " " + type.name() + " records into the journal.");
+        }
+    }
+
+    // -- FILES -- //
+
+    private File segmentFile(long id) {
+        return new File(directory, "segment-" + format(id) + ".log");
+    }
+
+    private File snapshotFile(long id) {
+        return new File(directory, "snapshot-" + format(id) + ".snap");
+    }
+
+    private static String format(long id) {
+        return String.format("%012d", id);
+    }
+
+    private List<Long> listIds(String prefix, String suffix) {
+        List<Long> ids = Lists.newArrayList();
+        String[] names = directory.list();
+        if (names == null) return ids;
+        for (String name : names) {
+            if (!name.startsWith(prefix) || !name.endsWith(suffix)) continue;
+            try {
+                ids.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.journal;
+
+import java.io.*;
+import java.util.zip.CRC32;
+
+/**
+ * A single append-only journal file, made of length and checksum prefixed frames.
+ * <p/>
+ * A frame that is cut short or fails its checksum marks the end of the readable journal, which is
+ * what a crash in the middle of an append leaves behind.
+ */
+class JournalSegment {
+    static final int MAGIC = 0x494E464A; // "INFJ"
+    static final int VERSION = 2;
+    static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    private final long id;
+    private final File file;
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+    private long size;
+
+    /**
+     * Open a new segment for appending.
+     *
+     * @param id   The segment number.
+     * @param file The file, which must not exist yet.
+     * @throws IOException If the file can't be created.
+     */
+    JournalSegment(long id, File file) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.fileOut = new FileOutputStream(file);
+        this.out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        size = 8;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Append a frame. The frame is only durable after {@link #sync()}.
+     *
+     * @param payload The frame payload.
+     * @throws IOException If writing fails.
+     */
+    void append(byte[] payload) throws IOException {
+        writeFrame(out, payload);
+        size += payload.length + 8;
+    }
+
+    /**
+     * Push everything appended so far to the disk.
+     *
+     * @throws IOException If writing fails.
+     */
+    void sync() throws IOException {
+        out.flush();
+        fileOut.getFD().sync();
+    }
+
+    void close() throws IOException {
+        sync();
+        out.close();
+    }
+
+    // -- FRAMES -- //
+
+    static void writeFrame(DataOutput out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    /**
+     * Read every intact frame of a journal file.
+     *
+     * @param file    The file.
+     * @param handler Called once per intact frame, in order.
+     * @return False if the file ended in a torn or corrupt frame.
+     * @throws IOException If the file can't be read, or isn't a journal file.
+     */
+    static boolean readFrames(File file, FrameHandler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("\"" + file.getName() + "\" is not a journal file.");
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException end) {
+                    return true;
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length < 0 || length > MAX_FRAME) return false;
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) return false;
+                    handler.handle(new DataInputStream(new ByteArrayInputStream(payload)));
+                } catch (EOFException torn) {
+                    return false;
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    interface FrameHandler {
+        void handle(DataInput frame) throws IOException;
+    }
+}
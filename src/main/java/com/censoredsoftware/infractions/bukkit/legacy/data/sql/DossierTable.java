@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.sql;
+
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataType;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Dossiers, with their infraction ids and addresses in child tables.
+ */
+class DossierTable extends SqlTable {
+    private static final String DELETE_INFRACTIONS = "DELETE FROM dossier_infractions WHERE dossier_id = ?";
+    private static final String DELETE_ADDRESSES = "DELETE FROM dossier_addresses WHERE dossier_id = ?";
+    private static final String UPSERT = "INSERT OR REPLACE INTO dossiers (id, last_known_name, confirmed_valid, last_seen) VALUES (?, ?, ?, ?)";
+    private static final String DELETE = "DELETE FROM dossiers WHERE id = ?";
+    private static final String INSERT_INFRACTION = "INSERT OR IGNORE INTO dossier_infractions (dossier_id, infraction_id) VALUES (?, ?)";
+    private static final String INSERT_ADDRESS = "INSERT OR IGNORE INTO dossier_addresses (dossier_id, address) VALUES (?, ?)";
+
+    @Override
+    DataType getType() {
+        return DataType.DOSSIER;
+    }
+
+    @Override
+    String[] getSchema() {
+        return new String[]{
+                "CREATE TABLE IF NOT EXISTS dossiers (id TEXT PRIMARY KEY NOT NULL, last_known_name TEXT COLLATE NOCASE, confirmed_valid INTEGER NOT NULL DEFAULT 0, last_seen INTEGER)",
+                "CREATE TABLE IF NOT EXISTS dossier_infractions (dossier_id TEXT NOT NULL, infraction_id TEXT NOT NULL, PRIMARY KEY (dossier_id, infraction_id))",
+                "CREATE TABLE IF NOT EXISTS dossier_addresses (dossier_id TEXT NOT NULL, address TEXT NOT NULL, PRIMARY KEY (dossier_id, address))"
+        };
+    }
+
+    @Override
+    void prepare() throws SQLException {
+        addColumn("dossiers", "last_seen", "INTEGER");
+
+        // Children are cleared before their parent is replaced, and re-inserted after.
+        write(DELETE_INFRACTIONS);
+        write(DELETE_ADDRESSES);
+        write(UPSERT);
+        write(DELETE);
+        write(INSERT_INFRACTION);
+        write(INSERT_ADDRESS);
+    }
+
+    @Override
+    Map<String, Map<String, Object>> loadAll() throws SQLException {
+        Map<String, Map<String, Object>> records = new LinkedHashMap<String, Map<String, Object>>();
+        ResultSet result = select("SELECT * FROM dossiers");
+        try {
+            while (result.next()) {
+                Map<String, Object> record = Maps.newHashMap();
+                String name = result.getString("last_known_name");
+                if (name != null) record.put("lastKnownName", name);
+                Long lastSeen = getLong(result, "last_seen");
+                if (lastSeen != null) record.put("lastSeen", lastSeen);
+                record.put("confirmedValid", result.getInt("confirmed_valid") != 0);
+                record.put("infractions", Lists.newArrayList());
+                record.put("addresses", Lists.newArrayList());
+                records.put(result.getString("id"), record);
+            }
+        } finally {
+            close(result);
+        }
+        loadChildren(records, "SELECT dossier_id, infraction_id FROM dossier_infractions", "infractions");
+        loadChildren(records, "SELECT dossier_id, address FROM dossier_addresses", "addresses");
+        return records;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadChildren(Map<String, Map<String, Object>> records, String sql, String key) throws SQLException {
+        ResultSet result = select(sql);
+        try {
+            while (result.next()) {
+                Map<String, Object> record = records.get(result.getString(1));
+                if (record != null) ((List<Object>) record.get(key)).add(result.getString(2));
+            }
+        } finally {
+            close(result);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void write(String id, Map<String, Object> record) throws SQLException {
+        batch(DELETE_INFRACTIONS, id);
+        batch(DELETE_ADDRESSES, id);
+        batch(UPSERT, id, string(record, "lastKnownName"), Boolean.parseBoolean(string(record, "confirmedValid")), toLong(record.get("lastSeen")));
+        if (record.get("infractions") instanceof Collection)
+            for (Object infraction : (Collection<Object>) record.get("infractions"))
+                batch(INSERT_INFRACTION, id, infraction);
+        if (record.get("addresses") instanceof Collection)
+            for (Object address : (Collection<Object>) record.get("addresses"))
+                batch(INSERT_ADDRESS, id, address);
+    }
+
+    @Override
+    void delete(String id) throws SQLException {
+        batch(DELETE_INFRACTIONS, id);
+        batch(DELETE_ADDRESSES, id);
+        batch(DELETE, id);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.sql;
+
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataType;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Infractions, with their evidence and notes in child tables.
+ */
+class InfractionTable extends SqlTable {
+    private static final String DELETE_EVIDENCE = "DELETE FROM evidence WHERE infraction_id = ?";
+    private static final String DELETE_NOTES = "DELETE FROM infraction_notes WHERE infraction_id = ?";
+    private static final String UPSERT = "INSERT OR REPLACE INTO infractions (id, player_id, issuer_id, time_created, reason, score) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String DELETE = "DELETE FROM infractions WHERE id = ?";
+    private static final String INSERT_EVIDENCE = "INSERT INTO evidence (infraction_id, position, issuer_id, type, time_created, data) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_NOTE = "INSERT INTO infraction_notes (infraction_id, position, note) VALUES (?, ?, ?)";
+
+    @Override
+    DataType getType() {
+        return DataType.INFRACTION;
+    }
+
+    @Override
+    String[] getSchema() {
+        return new String[]{
+                "CREATE TABLE IF NOT EXISTS infractions (id TEXT PRIMARY KEY NOT NULL, player_id TEXT, issuer_id TEXT, time_created INTEGER, reason TEXT, score INTEGER)",
+                "CREATE TABLE IF NOT EXISTS evidence (infraction_id TEXT NOT NULL, position INTEGER NOT NULL, issuer_id TEXT, type TEXT, time_created INTEGER, data TEXT, PRIMARY KEY (infraction_id, position))",
+                "CREATE TABLE IF NOT EXISTS infraction_notes (infraction_id TEXT NOT NULL, position INTEGER NOT NULL, note TEXT, PRIMARY KEY (infraction_id, position))"
+        };
+    }
+
+    @Override
+    void prepare() throws SQLException {
+        // Children are cleared before their parent is replaced, and re-inserted after.
+        write(DELETE_EVIDENCE);
+        write(DELETE_NOTES);
+        write(UPSERT);
+        write(DELETE);
+        write(INSERT_EVIDENCE);
+        write(INSERT_NOTE);
+    }
+
+    @Override
+    Map<String, Map<String, Object>> loadAll() throws SQLException {
+        Map<String, Map<String, Object>> records = new LinkedHashMap<String, Map<String, Object>>();
+        ResultSet result = select("SELECT * FROM infractions");
+        try {
+            while (result.next()) {
+                Map<String, Object> record = Maps.newHashMap();
+                record.put("playerId", result.getString("player_id"));
+                record.put("issuer", result.getString("issuer_id"));
+                record.put("timeCreated", getLong(result, "time_created"));
+                record.put("reason", result.getString("reason"));
+                record.put("score", getInt(result, "score"));
+                record.put("evidence", Lists.newArrayList());
+                record.put("notes", Lists.newArrayList());
+                records.put(result.getString("id"), record);
+            }
+        } finally {
+            close(result);
+        }
+
+        // One pass over each child table, instead of a query per infraction.
+        result = select("SELECT * FROM evidence ORDER BY infraction_id, position");
+        try {
+            while (result.next()) {
+                Map<String, Object> record = records.get(result.getString("infraction_id"));
+                if (record == null) continue;
+                Map<String, Object> evidence = Maps.newHashMap();
+                evidence.put("issuer", result.getString("issuer_id"));
+                evidence.put("type", result.getString("type"));
+                evidence.put("timeCreated", getLong(result, "time_created"));
+                evidence.put("data", result.getString("data"));
+                list(record, "evidence").add(evidence);
+            }
+        } finally {
+            close(result);
+        }
+        result = select("SELECT * FROM infraction_notes ORDER BY infraction_id, position");
+        try {
+            while (result.next()) {
+                Map<String, Object> record = records.get(result.getString("infraction_id"));
+                if (record != null) list(record, "notes").add(result.getString("note"));
+            }
+        } finally {
+            close(result);
+        }
+        return records;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void write(String id, Map<String, Object> record) throws SQLException {
+        batch(DELETE_EVIDENCE, id);
+        batch(DELETE_NOTES, id);
+        batch(UPSERT, id, string(record, "playerId"), string(record, "issuer"), toLong(record.get("timeCreated")), string(record, "reason"), toInt(record.get("score")));
+        if (record.get("evidence") instanceof List) {
+            int position = 0;
+            for (Map<String, Object> evidence : (List<Map<String, Object>>) record.get("evidence"))
+                batch(INSERT_EVIDENCE, id, position++, string(evidence, "issuer"), string(evidence, "type"), toLong(evidence.get("timeCreated")), string(evidence, "data"));
+        }
+        if (record.get("notes") instanceof List) {
+            int position = 0;
+            for (Object note : (List<Object>) record.get("notes"))
+                batch(INSERT_NOTE, id, position++, note);
+        }
+    }
+
+    @Override
+    void delete(String id) throws SQLException {
+        batch(DELETE_EVIDENCE, id);
+        batch(DELETE_NOTES, id);
+        batch(DELETE, id);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Map<String, Object> record, String key) {
+        return (List<Object>) record.get(key);
+    }
+}
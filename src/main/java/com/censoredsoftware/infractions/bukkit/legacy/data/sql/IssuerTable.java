@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.sql;
+
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataType;
+import com.google.common.collect.Maps;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Issuers, with their origin flattened into the same row.
+ */
+class IssuerTable extends SqlTable {
+    private static final String UPSERT = "INSERT OR REPLACE INTO issuers (id, type, origin_id, origin_name, origin_type) VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE = "DELETE FROM issuers WHERE id = ?";
+
+    @Override
+    DataType getType() {
+        return DataType.ISSUER;
+    }
+
+    @Override
+    String[] getSchema() {
+        return new String[]{"CREATE TABLE IF NOT EXISTS issuers (id TEXT PRIMARY KEY NOT NULL, type TEXT NOT NULL, origin_id TEXT, origin_name TEXT, origin_type TEXT)"};
+    }
+
+    @Override
+    void prepare() throws SQLException {
+        write(UPSERT);
+        write(DELETE);
+    }
+
+    @Override
+    Map<String, Map<String, Object>> loadAll() throws SQLException {
+        Map<String, Map<String, Object>> records = new LinkedHashMap<String, Map<String, Object>>();
+        ResultSet result = select("SELECT * FROM issuers");
+        try {
+            while (result.next()) {
+                Map<String, Object> origin = Maps.newHashMap();
+                origin.put("id", result.getString("origin_id"));
+                origin.put("name", result.getString("origin_name"));
+                origin.put("type", result.getString("origin_type"));
+                Map<String, Object> record = Maps.newHashMap();
+                record.put("id", result.getString("id"));
+                record.put("type", result.getString("type"));
+                record.put("origin", origin);
+                records.put(result.getString("id"), record);
+            }
+        } finally {
+            close(result);
+        }
+        return records;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void write(String id, Map<String, Object> record) throws SQLException {
+        Map<String, Object> origin = (Map<String, Object>) record.get("origin");
+        batch(UPSERT, id, string(record, "type"), string(origin, "id"), string(origin, "name"), string(origin, "type"));
+    }
+
+    @Override
+    void delete(String id) throws SQLException {
+        batch(DELETE, id);
+    }
+}
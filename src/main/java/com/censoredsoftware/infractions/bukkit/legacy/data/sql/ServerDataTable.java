@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.sql;
+
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataType;
+import com.censoredsoftware.infractions.bukkit.legacy.data.ValueStreams;
+import com.google.common.collect.Maps;
+
+import java.io.*;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server data, one row per cell. Values keep their type by being stored as value stream blobs.
+ */
+class ServerDataTable extends SqlTable {
+    private static final String UPSERT = "INSERT OR REPLACE INTO server_data (id, type, row_key, column_key, value, expiration) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String DELETE = "DELETE FROM server_data WHERE id = ?";
+
+    @Override
+    DataType getType() {
+        return DataType.SERVER;
+    }
+
+    @Override
+    String[] getSchema() {
+        return new String[]{
+                "CREATE TABLE IF NOT EXISTS server_data (id TEXT PRIMARY KEY NOT NULL, type TEXT NOT NULL, row_key TEXT, column_key TEXT, value BLOB, expiration INTEGER)"
+        };
+    }
+
+    @Override
+    void prepare() throws SQLException {
+        write(UPSERT);
+        write(DELETE);
+    }
+
+    @Override
+    Map<String, Map<String, Object>> loadAll() throws SQLException {
+        Map<String, Map<String, Object>> records = new LinkedHashMap<String, Map<String, Object>>();
+        ResultSet result = select("SELECT * FROM server_data");
+        try {
+            while (result.next()) {
+                Map<String, Object> record = Maps.newHashMap();
+                record.put("type", result.getString("type"));
+                record.put("row", result.getString("row_key"));
+                record.put("column", result.getString("column_key"));
+                record.put("value", decode(result.getBytes("value")));
+                Long expiration = getLong(result, "expiration");
+                if (expiration != null) record.put("expiration", expiration);
+                records.put(result.getString("id"), record);
+            }
+        } finally {
+            close(result);
+        }
+        return records;
+    }
+
+    @Override
+    void write(String id, Map<String, Object> record) throws SQLException {
+        batch(UPSERT, id, string(record, "type"), string(record, "row"), string(record, "column"), encode(record.get("value")), toLong(record.get("expiration")));
+    }
+
+    @Override
+    void delete(String id) throws SQLException {
+        batch(DELETE, id);
+    }
+
+    // -- VALUES -- //
+
+    private static byte[] encode(Object value) throws SQLException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            ValueStreams.writeValue(out, value);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException errored) {
+            throw new SQLException("Unable to encode server data value.", errored);
+        }
+    }
+
+    private static Object decode(byte[] value) throws SQLException {
+        if (value == null) return null;
+        try {
+            return ValueStreams.readValue(new DataInputStream(new ByteArrayInputStream(value)));
+        } catch (IOException errored) {
+            throw new SQLException("Unable to decode server data value.", errored);
+        }
+    }
+}
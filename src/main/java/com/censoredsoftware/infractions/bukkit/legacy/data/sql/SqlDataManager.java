@@ -0,0 +1,240 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.sql;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.data.*;
+import com.censoredsoftware.infractions.bukkit.legacy.data.file.InfractionsFile;
+import com.censoredsoftware.infractions.bukkit.legacy.data.file.InfractionsFileFactory;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Embedded SQL save method, backed by a local SQLite database file.
+ * <p/>
+ * Records stay resident in memory, since the rest of the plugin shares and mutates them in place. Saves write
+ * only the dirty records, as one transaction of batched, reused prepared statements. The database is only read
+ * on startup; lookups are answered by the shared in-memory indexes.
+ */
+@SuppressWarnings("unchecked")
+public class SqlDataManager extends DataManager {
+    // -- VARIABLES -- //
+
+    // Data Folder
+    public static final String SAVE_PATH = InfractionsPlugin.getInst().getDataFolder() + "/"; // Don't change this.
+
+    private static final Logger LOG = InfractionsPlugin.getInst().getLogger();
+
+    // -- DATA -- //
+
+    private ConcurrentMap<Class, InfractionsFile> dataFiles;
+    private ConcurrentMap<Class, SqlTable> tables;
+
+    // Guards the connection.
+    private final Object lock = new Object();
+    private Connection connection;
+
+    // Prevent accidental double init.
+    private boolean didInit = false;
+
+    @Override
+    protected void init() {
+        // Check if init has happened already...
+        if (didInit) throw new RuntimeException("Data tried to initialize more than once.");
+
+        // Open the database.
+        String fileName = InfractionsPlugin.getInst().getConfig().getString("saving.sql.file", "infractions.db");
+        try {
+            Class.forName("org.sqlite.JDBC");
+            connection = DriverManager.getConnection("jdbc:sqlite:" + new File(SAVE_PATH, fileName).getPath());
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute("PRAGMA journal_mode = WAL");
+                statement.execute("PRAGMA synchronous = NORMAL");
+            } finally {
+                statement.close();
+            }
+            connection.setAutoCommit(false);
+        } catch (Exception errored) {
+            throw new RuntimeException("Infractions couldn't open its database.", errored);
+        }
+
+        // Create the in-memory stores and the tables.
+        dataFiles = Maps.newConcurrentMap();
+        tables = Maps.newConcurrentMap();
+        for (SqlTable table : Arrays.asList(new IssuerTable(), new InfractionTable(), new DossierTable(), new ServerDataTable())) {
+            InfractionsFile file = InfractionsFileFactory.create(table.getType(), SAVE_PATH);
+            if (file == null) continue;
+            dataFiles.put(table.getType().getDataClass(), file);
+            tables.put(table.getType().getDataClass(), table);
+        }
+
+        // Load in dependency order, so issuers exist before the infractions that reference them.
+        try {
+            for (DataType type : DataTypeExecutor.loadOrder()) {
+                SqlTable table = tables.get(type.getDataClass());
+                if (table == null) continue;
+                table.open(connection);
+                connection.commit();
+                load(dataFiles.get(type.getDataClass()), table.loadAll());
+            }
+        } catch (SQLException errored) {
+            throw new RuntimeException("Infractions couldn't load its database.", errored);
+        }
+
+        // Let the plugin know that this has finished.
+        didInit = true;
+    }
+
+    private void load(InfractionsFile file, Map<String, Map<String, Object>> records) {
+        int count = 0;
+        for (Map.Entry<String, Map<String, Object>> entry : records.entrySet()) {
+            try {
+                ConfigurationSection section = ValueStreams.toSection(entry.getValue());
+                Object value = file.valueFromData(entry.getKey(), section);
+                if (value == null) {
+                    LOG.warning("Corrupt: " + entry.getKey() + ", in database for " + file.getName() + ".");
+                    continue;
+                }
+                file.getLoadedData().load(file.keyFromString(entry.getKey()), value);
+                count++;
+            } catch (Exception errored) {
+                errored.printStackTrace();
+            }
+        }
+        LOG.info("Loaded " + count + " " + file.getName() + " records from the database.");
+    }
+
+    @Override
+    protected void save() {
+        // Make sure data actually is loaded.
+        if (!didInit) return;
+
+        synchronized (lock) {
+            if (connection == null) return;
+
+            // Dependents first, serializing them can register new issuers to save in the same run.
+            List<DataType> order = DataTypeExecutor.saveOrder();
+            List<Object[]> written = Lists.newArrayList();
+            try {
+                for (DataType type : order) {
+                    InfractionsFile file = dataFiles.get(type.getDataClass());
+                    if (file == null) continue;
+                    SqlTable table = tables.get(type.getDataClass());
+                    TrackedDataMap map = file.getLoadedData();
+                    for (Map.Entry<Object, Long> entry : ((Map<Object, Long>) map.getDirtyKeys()).entrySet()) {
+                        Object value = map.get(entry.getKey());
+                        if (value == null) table.delete(entry.getKey().toString());
+                        else table.write(entry.getKey().toString(), file.encode(value));
+                        written.add(new Object[]{map, entry.getKey(), entry.getValue()});
+                    }
+                }
+                if (written.isEmpty()) return;
+                for (DataType type : order) {
+                    SqlTable table = tables.get(type.getDataClass());
+                    if (table != null) table.executeBatches();
+                }
+                connection.commit();
+            } catch (Exception errored) {
+                LOG.severe("Unable to save to the database: " + errored.getMessage());
+                for (SqlTable table : tables.values())
+                    table.clearBatches();
+                try {
+                    connection.rollback();
+                } catch (SQLException ignored) {
+                }
+                return;
+            }
+
+            // Only what was committed is clean.
+            for (Object[] entry : written)
+                ((TrackedDataMap) entry[0]).markClean(entry[1], (Long) entry[2]);
+        }
+    }
+
+    @Override
+    protected void close() {
+        if (!didInit) return;
+
+        synchronized (lock) {
+            for (SqlTable table : tables.values())
+                table.close();
+            try {
+                connection.close();
+            } catch (SQLException errored) {
+                LOG.severe("Unable to close the database: " + errored.getMessage());
+            }
+            connection = null;
+        }
+    }
+
+    @Override
+    protected void flushData() {
+        // Make sure data actually is loaded.
+        if (!didInit) return;
+
+        // Kick everyone
+        for (Player player : Bukkit.getOnlinePlayers())
+            player.kickPlayer(ChatColor.GREEN + "Resetting data.");
+
+        // Clear the data
+        for (InfractionsFile data : dataFiles.values())
+            data.clear();
+        TempDataManager.purge();
+
+        save();
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> I getFor(final Class<V> clazz, final K key) {
+        if (getFile(clazz).containsKey(key)) return (I) getFile(clazz).get(key);
+        return null;
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> Collection<I> getAllOf(final Class<V> clazz) {
+        return (Collection<I>) getFile(clazz).values();
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>, I> ConcurrentMap<K, I> getMapFor(final Class<V> clazz) {
+        return (ConcurrentMap<K, I>) getFile(clazz).getLoadedData();
+    }
+
+    @Override
+    public <K, V extends DataSerializable<K>> void markDirty(final Class<V> clazz, final K key) {
+        getFile(clazz).markDirty(key);
+    }
+
+    private <K, V extends DataSerializable<K>, I> InfractionsFile<K, V, I> getFile(Class<V> clazz) {
+        if (dataFiles.containsKey(clazz)) return (InfractionsFile<K, V, I>) dataFiles.get(clazz);
+        throw new UnsupportedOperationException("Infractions wants a data type that does not exist.");
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.sql;
+
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataType;
+import com.google.common.collect.Maps;
+
+import java.sql.*;
+import java.util.Map;
+
+/**
+ * The tables backing a single data type.
+ * <p/>
+ * Records go in and come out in the same serialized form the files use, so the existing codecs
+ * decode them. Prepared statements are created once per connection and reused for every save.
+ */
+abstract class SqlTable {
+    // Write statements, in the order their batches have to run.
+    private final Map<String, PreparedStatement> writes = Maps.newLinkedHashMap();
+    private Connection connection;
+
+    /**
+     * @return The data type stored in these tables.
+     */
+    abstract DataType getType();
+
+    /**
+     * @return The statements that create the tables, if they don't exist yet.
+     */
+    abstract String[] getSchema();
+
+    /**
+     * Prepare the write statements, in the order their batches have to run.
+     *
+     * @throws SQLException If a statement is invalid.
+     */
+    abstract void prepare() throws SQLException;
+
+    /**
+     * Read every record.
+     *
+     * @return The serialized records, by string id.
+     * @throws SQLException If reading fails.
+     */
+    abstract Map<String, Map<String, Object>> loadAll() throws SQLException;
+
+    /**
+     * Queue a record to be inserted or replaced.
+     *
+     * @param id     The string id.
+     * @param record The serialized record.
+     * @throws SQLException If queueing fails.
+     */
+    abstract void write(String id, Map<String, Object> record) throws SQLException;
+
+    /**
+     * Queue a record to be deleted.
+     *
+     * @param id The string id.
+     * @throws SQLException If queueing fails.
+     */
+    abstract void delete(String id) throws SQLException;
+
+    final void open(Connection connection) throws SQLException {
+        this.connection = connection;
+        Statement statement = connection.createStatement();
+        try {
+            for (String sql : getSchema())
+                statement.executeUpdate(sql);
+        } finally {
+            statement.close();
+        }
+        prepare();
+    }
+
+    /**
+     * Run every queued write. The caller owns the transaction.
+     *
+     * @throws SQLException If a write fails.
+     */
+    final void executeBatches() throws SQLException {
+        for (PreparedStatement statement : writes.values())
+            statement.executeBatch();
+    }
+
+    final void clearBatches() {
+        for (PreparedStatement statement : writes.values()) {
+            try {
+                statement.clearBatch();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    final void close() {
+        for (PreparedStatement statement : writes.values()) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        writes.clear();
+    }
+
+    /**
+     * Add a column to a table created by an older version.
+     */
+    protected final void addColumn(String table, String column, String definition) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery("PRAGMA table_info(" + table + ")");
+            try {
+                while (result.next())
+                    if (column.equalsIgnoreCase(result.getString("name"))) return;
+            } finally {
+                result.close();
+            }
+            statement.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        } finally {
+            statement.close();
+        }
+    }
+
+    // -- STATEMENTS -- //
+
+    protected final PreparedStatement write(String sql) throws SQLException {
+        PreparedStatement statement = writes.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            writes.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Queue a write.
+     */
+    protected final void batch(String sql, Object... args) throws SQLException {
+        PreparedStatement statement = write(sql);
+        bind(statement, args);
+        statement.addBatch();
+    }
+
+    /**
+     * Run a one-off read. The result has to be handed to {@link #close(ResultSet)} afterwards.
+     */
+    protected final ResultSet select(String sql) throws SQLException {
+        return connection.createStatement().executeQuery(sql);
+    }
+
+    /**
+     * Close a result from {@link #select(String)}, along with its statement.
+     */
+    protected static void close(ResultSet result) throws SQLException {
+        Statement statement = result.getStatement();
+        try {
+            result.close();
+        } finally {
+            statement.close();
+        }
+    }
+
+    // -- VALUES -- //
+
+    private static void bind(PreparedStatement statement, Object... args) throws SQLException {
+        for (int i = 0; i < args.length; i++) {
+            Object value = args[i];
+            if (value == null) statement.setNull(i + 1, Types.NULL);
+            else if (value instanceof Boolean) statement.setInt(i + 1, (Boolean) value ? 1 : 0);
+            else if (value instanceof Long) statement.setLong(i + 1, (Long) value);
+            else if (value instanceof Integer) statement.setInt(i + 1, (Integer) value);
+            else if (value instanceof byte[]) statement.setBytes(i + 1, (byte[]) value);
+            else statement.setString(i + 1, value.toString());
+        }
+    }
+
+    protected static Long getLong(ResultSet result, String column) throws SQLException {
+        long value = result.getLong(column);
+        return result.wasNull() ? null : value;
+    }
+
+    protected static Integer getInt(ResultSet result, String column) throws SQLException {
+        int value = result.getInt(column);
+        return result.wasNull() ? null : value;
+    }
+
+    /**
+     * Get a string field of a serialized record, the way the codecs read it.
+     */
+    protected static String string(Map<String, Object> record, String key) {
+        Object value = record.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    protected static Long toLong(Object value) {
+        if (value == null) return null;
+        if (value instanceof Number) return ((Number) value).longValue();
+        return Long.parseLong(value.toString());
+    }
+
+    protected static Integer toInt(Object value) {
+        if (value == null) return null;
+        if (value instanceof Number) return ((Number) value).intValue();
+        return Integer.parseInt(value.toString());
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 Alexander Chauncey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.censoredsoftware.infractions.bukkit.legacy.data.thread;
+
+import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
+
+import java.util.UUID;
+
+/**
+ * Recounts the cached score of every dossier in memory, fixing any that drifted from their infractions.
+ * <p/>
+ * Dossiers that are still encoded, or that never worked out their score, have nothing cached to drift.
+ */
+public class ScoreVerifyTask implements Runnable {
+    @Override
+    public void run() {
+        int checked = 0, fixed = 0;
+        for (LegacyDossier dossier : DataManager.getManager().<UUID, LegacyDossier, LegacyDossier>getResidentOf(LegacyDossier.class)) {
+            checked++;
+            if (!dossier.verifyScore()) fixed++;
+        }
+        if (fixed > 0)
+            InfractionsPlugin.getInst().getLogger().warning("Fixed " + fixed + " out of " + checked + " cached dossier scores.");
+    }
+}
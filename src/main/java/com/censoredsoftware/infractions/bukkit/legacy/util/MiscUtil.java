@@ -18,17 +18,19 @@ package com.censoredsoftware.infractions.bukkit.legacy.util;
 
 import com.censoredsoftware.infractions.bukkit.Infraction;
 import com.censoredsoftware.infractions.bukkit.Infractions;
-import com.censoredsoftware.infractions.bukkit.dossier.CompleteDossier;
-import com.censoredsoftware.infractions.bukkit.dossier.Dossier;
 import com.censoredsoftware.infractions.bukkit.evidence.Evidence;
 import com.censoredsoftware.infractions.bukkit.evidence.EvidenceType;
 import com.censoredsoftware.infractions.bukkit.issuer.Issuer;
 import com.censoredsoftware.infractions.bukkit.issuer.IssuerType;
 import com.censoredsoftware.infractions.bukkit.legacy.InfractionsPlugin;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.InfractionId;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyDossier;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.LegacyIssuer;
+import com.censoredsoftware.infractions.bukkit.legacy.compat.NameCache;
 import com.censoredsoftware.infractions.bukkit.legacy.compat.UUIDFetcher;
+import com.censoredsoftware.infractions.bukkit.legacy.data.DataManager;
 import com.censoredsoftware.infractions.bukkit.legacy.data.ServerData;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
+import com.censoredsoftware.infractions.bukkit.legacy.data.StringDictionary;
 import com.google.common.collect.Lists;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -36,9 +38,6 @@ import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.net.URL;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
@@ -104,44 +103,26 @@ public class MiscUtil {
         return maxScore;
     }
 
-    @SuppressWarnings("unchecked")
-    public static boolean addInfraction(String target, CommandSender sender, int score, String reason, String proof) {
-        try {
-            UUID id = getId(target);
-            Issuer issuer = getIssuer(sender);
-            Infractions.getCompleteDossier(target).cite(new Infraction(id, System.currentTimeMillis(), reason, score, issuer, createEvidence(issuer, proof)));
-            return true;
-        } catch (Exception ignored) {
-        }
-        return false;
-    }
-
     public static String getInfractionsPlayer(final String guess) {
-        Dossier dossier = Iterables.find(Infractions.allDossiers(), new Predicate<Dossier>() {
-            @Override
-            public boolean apply(Dossier dossier) {
-                return dossier instanceof CompleteDossier && ((CompleteDossier) dossier).getLastKnownName().toLowerCase().startsWith(guess.toLowerCase());
-            }
-        }, null);
-        if (dossier != null && dossier.getId() != null) return ((CompleteDossier) dossier).getLastKnownName();
-        return null;
+        LegacyDossier dossier = DataManager.getManager().findDossierByName(guess);
+        return dossier != null ? dossier.complete().getLastKnownName() : null;
     }
 
     public static Issuer getIssuer(CommandSender sender) {
         if (sender instanceof Player) {
             Player player = (Player) sender;
-            return new Issuer(IssuerType.STAFF, player.getUniqueId().toString());
+            return LegacyIssuer.register(new Issuer(IssuerType.STAFF, StringDictionary.intern(player.getUniqueId().toString())));
         }
-        return new Issuer(IssuerType.UNKNOWN, sender.getName());
+        return LegacyIssuer.register(new Issuer(IssuerType.UNKNOWN, StringDictionary.intern(sender.getName())));
     }
 
-    public static Evidence createEvidence(Issuer issuer, String proof) {
-        boolean isImage = false;
-        try {
-            Image image = ImageIO.read(new URL(proof));
-            isImage = image != null;
-        } catch (Exception ignored) {
-        }
+    /**
+     * @param issuer  The issuer.
+     * @param proof   The proof URL.
+     * @param isImage The URL points to an image, see {@link URLUtil#getContentType(String)}.
+     * @return The evidence.
+     */
+    public static Evidence createEvidence(Issuer issuer, String proof, boolean isImage) {
         return new Evidence(issuer, isImage ? EvidenceType.IMAGE_URL : EvidenceType.OTHER_URL, System.currentTimeMillis(), proof);
     }
 
@@ -213,42 +194,8 @@ public class MiscUtil {
         }
     }
 
-    public static boolean removeInfraction(String target, final String givenID) {
-        CompleteDossier dossier = Infractions.getCompleteDossier(target);
-        Infraction infraction = Iterables.find(dossier.getInfractions(), new Predicate<Infraction>() {
-            @Override
-            public boolean apply(Infraction infraction) {
-                return givenID.equals(getInfractionId(infraction));
-            }
-        }, null);
-        if (infraction != null) {
-            dossier.acquit(infraction);
-            return true;
-        }
-        return false;
-    }
-
     public static String getInfractionId(Infraction infraction) {
-        String s = infraction.getTimeCreated().toString();
-        StringBuilder id = new StringBuilder();
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            id.append(getLetterForId(c));
-        }
-        return id.toString();
-    }
-
-    private static String getLetterForId(char num) {
-        if (num == '1') return "F";
-        if (num == '2') return "Z";
-        if (num == '3') return "c";
-        if (num == '4') return "A";
-        if (num == '5') return "Q";
-        if (num == '6') return "u";
-        if (num == '7') return "p";
-        if (num == '8') return "W";
-        if (num == '9') return "j";
-        return "b"; // 0
+        return InfractionId.of(infraction).toString();
     }
 
     public static String prettyTime(long time, boolean since) {
@@ -271,7 +218,8 @@ public class MiscUtil {
     }
 
     public static UUID getId(String playerName) {
-        return Bukkit.getOfflinePlayer(playerName).getUniqueId();
+        UUID id = NameCache.getId(playerName);
+        return id != null ? id : Bukkit.getOfflinePlayer(playerName).getUniqueId();
     }
 
     public static Collection<UUID> getIds(List<String> playerNames) {
@@ -20,15 +20,15 @@ import com.rosaloves.bitlyj.Bitly.Provider;
 import com.rosaloves.bitlyj.Url;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.net.*;
 
 import static com.rosaloves.bitlyj.Bitly.as;
 import static com.rosaloves.bitlyj.Bitly.shorten;
 
 public class URLUtil {
+    // Proof links are checked while a command waits on them, so they answer quickly or not at all.
+    private static final int TIMEOUT_MILLIS = 5000;
+
     /**
      * Converts a URL into a bit.ly shortened URL.
      *
@@ -43,21 +43,37 @@ public class URLUtil {
     }
 
     public static boolean isValidURL(String input) {
+        return getContentType(input) != null;
+    }
+
+    /**
+     * Ask what a URL points to, without downloading it. Blocks on the network.
+     *
+     * @return The content type, empty if the server doesn't say, or null if the URL can't be reached.
+     */
+    public static String getContentType(String input) {
         if (!input.startsWith("http://") && !input.startsWith("https://")) {
             input = ("http://" + input);
         }
         try {
             URI uri = new URI(input);
             URL url = uri.toURL();
-            java.net.URLConnection conn = url.openConnection();
+            URLConnection conn = url.openConnection();
+            conn.setConnectTimeout(TIMEOUT_MILLIS);
+            conn.setReadTimeout(TIMEOUT_MILLIS);
+            if (conn instanceof HttpURLConnection) ((HttpURLConnection) conn).setRequestMethod("HEAD");
             conn.connect();
-            return true;
+            String type = conn.getContentType();
+            if (conn instanceof HttpURLConnection) ((HttpURLConnection) conn).disconnect();
+            return type != null ? type.toLowerCase() : "";
         } catch (MalformedURLException e) {
-            return false;
+            return null;
         } catch (IOException e) {
-            return false;
+            return null;
         } catch (URISyntaxException e) {
-            return false;
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
 }